@@ -6,6 +6,7 @@ CREATE TABLE RESTAURANT (
     rue varchar2(255) NOT NULL,
     num_rue varchar2(4),
     pays char(2) NOT NULL,
+    version number(9) DEFAULT 0 NOT NULL,
     PRIMARY KEY (numero)
 );
 
@@ -15,9 +16,11 @@ CREATE TABLE PRODUIT (
     prix_unitaire number(9,2) NOT NULL,
     nom varchar2(255) NOT NULL,
     description varchar2(255) NOT NULL,
+    version number(9) DEFAULT 0 NOT NULL,
     PRIMARY KEY (numero)
 );
 ALTER TABLE PRODUIT ADD CONSTRAINT FK_PRODUIT_RESTO FOREIGN KEY(fk_resto) REFERENCES RESTAURANT(numero) ON DELETE CASCADE;
+CREATE INDEX IX_PRODUIT_RESTO ON PRODUIT(fk_resto, numero);
 
 CREATE TABLE CLIENT (
     numero number(9) NOT NULL,
@@ -33,12 +36,14 @@ CREATE TABLE CLIENT (
     prenom varchar2(255),
     forme_sociale varchar2(5),
     type char(1) NOT NULL,
+    version number(9) DEFAULT 0 NOT NULL,
     PRIMARY KEY (numero)
 );
 ALTER TABLE CLIENT ADD CONSTRAINT CK_TYPE CHECK (type IN ('P', 'O'));
 ALTER TABLE CLIENT ADD CONSTRAINT CK_FORME_SOCIALE CHECK ((type = 'P' AND forme_sociale IS NULL) OR (type = 'O' AND forme_sociale IN ('SA', 'F', 'A')));
 ALTER TABLE CLIENT ADD CONSTRAINT CK_PRENOM CHECK ((type = 'P' AND prenom IS NOT NULL) OR (type = 'O' AND prenom IS NULL));
 ALTER TABLE CLIENT ADD CONSTRAINT CK_EST_UNE_FEMME CHECK ((type = 'P' AND est_une_femme IN('O', 'N')) OR (type = 'O' AND est_une_femme IS NULL));
+CREATE UNIQUE INDEX UX_CLIENT_EMAIL ON CLIENT(email);
 
 CREATE TABLE COMMANDE (
     numero number(9) NOT NULL,
@@ -46,11 +51,19 @@ CREATE TABLE COMMANDE (
     fk_resto number(9) NOT NULL,
     a_emporter char(1) NOT NULL,
     quand date NOT NULL,
+    montant_total number(9,2) DEFAULT 0 NOT NULL,
+    version number(9) DEFAULT 0 NOT NULL,
+    cle_idempotence varchar2(64),
     PRIMARY KEY (numero)
 );
 ALTER TABLE COMMANDE ADD CONSTRAINT FK_COMMANDE_CLIENT FOREIGN KEY (fk_client) REFERENCES CLIENT(numero) ON DELETE CASCADE;
 ALTER TABLE COMMANDE ADD CONSTRAINT FK_COMMANDE_RESTO FOREIGN KEY (fk_resto) REFERENCES RESTAURANT(numero);
 ALTER TABLE COMMANDE ADD CONSTRAINT CK_A_EMPORTER CHECK (a_emporter IN('O', 'N'));
+CREATE INDEX IX_COMMANDE_RESTO_MONTANT ON COMMANDE(fk_resto, montant_total);
+CREATE INDEX IX_COMMANDE_QUAND ON COMMANDE(quand);
+CREATE INDEX IX_COMMANDE_RESTO_QUAND ON COMMANDE(fk_resto, quand);
+-- A key given by the client to each order it submits, a retried submission cannot insert the order twice
+CREATE UNIQUE INDEX UX_COMMANDE_CLE_IDEMPOTENCE ON COMMANDE(cle_idempotence);
 
 CREATE TABLE PRODUIT_COMMANDE (
      fk_commande number(9) NOT NULL,
@@ -60,10 +73,45 @@ CREATE TABLE PRODUIT_COMMANDE (
 ALTER TABLE PRODUIT_COMMANDE ADD CONSTRAINT FK_PRODUIT_COMMANDE_COMMANDE FOREIGN KEY (fk_commande) REFERENCES COMMANDE(numero) ON DELETE CASCADE;
 ALTER TABLE PRODUIT_COMMANDE ADD CONSTRAINT FK_PRODUIT_COMMANDE_PRODUIT FOREIGN KEY (fk_produit) REFERENCES PRODUIT(numero) ON DELETE CASCADE;
 
-CREATE SEQUENCE SEQ_RESTAURANT;
-CREATE SEQUENCE SEQ_CLIENT;
-CREATE SEQUENCE SEQ_COMMANDE;
-CREATE SEQUENCE SEQ_PRODUIT;
+-- Orders older than the retention period are moved here by the archival job (OrderArchiver), keeping their number
+CREATE TABLE COMMANDE_ARCHIVE (
+    numero number(9) NOT NULL,
+    fk_client number(9) NOT NULL,
+    fk_resto number(9) NOT NULL,
+    a_emporter char(1) NOT NULL,
+    quand date NOT NULL,
+    montant_total number(9,2) NOT NULL,
+    PRIMARY KEY (numero)
+);
+ALTER TABLE COMMANDE_ARCHIVE ADD CONSTRAINT FK_COMMANDE_ARCHIVE_CLIENT FOREIGN KEY (fk_client) REFERENCES CLIENT(numero) ON DELETE CASCADE;
+ALTER TABLE COMMANDE_ARCHIVE ADD CONSTRAINT FK_COMMANDE_ARCHIVE_RESTO FOREIGN KEY (fk_resto) REFERENCES RESTAURANT(numero);
+CREATE INDEX IX_COMMANDE_ARCHIVE_CLIENT ON COMMANDE_ARCHIVE(fk_client, quand);
+CREATE INDEX IX_COMMANDE_ARCHIVE_RESTO ON COMMANDE_ARCHIVE(fk_resto, quand);
+
+CREATE TABLE PRODUIT_COMMANDE_ARCHIVE (
+     fk_commande number(9) NOT NULL,
+     fk_produit number(9) NOT NULL,
+     PRIMARY KEY (fk_commande, fk_produit)
+);
+ALTER TABLE PRODUIT_COMMANDE_ARCHIVE ADD CONSTRAINT FK_PRODUIT_COMMANDE_ARCHIVE_COMMANDE FOREIGN KEY (fk_commande) REFERENCES COMMANDE_ARCHIVE(numero) ON DELETE CASCADE;
+ALTER TABLE PRODUIT_COMMANDE_ARCHIVE ADD CONSTRAINT FK_PRODUIT_COMMANDE_ARCHIVE_PRODUIT FOREIGN KEY (fk_produit) REFERENCES PRODUIT(numero) ON DELETE CASCADE;
+
+-- Number of orders and revenue per restaurant and day, maintained by the application as orders are written
+CREATE TABLE CHIFFRE_AFFAIRES_JOUR (
+    fk_resto number(9) NOT NULL,
+    jour date NOT NULL,
+    nombre_commandes number(9) NOT NULL,
+    montant_total number(12,2) NOT NULL,
+    PRIMARY KEY (fk_resto, jour)
+);
+ALTER TABLE CHIFFRE_AFFAIRES_JOUR ADD CONSTRAINT FK_CHIFFRE_AFFAIRES_JOUR_RESTO FOREIGN KEY (fk_resto) REFERENCES RESTAURANT(numero);
+CREATE INDEX IX_CHIFFRE_AFFAIRES_JOUR ON CHIFFRE_AFFAIRES_JOUR(jour);
+
+-- The application reserves identifiers by blocks of 50 (HibernateUtil.ID_ALLOCATION_SIZE), one NEXTVAL per block
+CREATE SEQUENCE SEQ_RESTAURANT START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE SEQ_CLIENT START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE SEQ_COMMANDE START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE SEQ_PRODUIT START WITH 1 INCREMENT BY 50;
 
 CREATE OR REPLACE TRIGGER TR_BI_RESTAURANT
 BEFORE INSERT ON RESTAURANT
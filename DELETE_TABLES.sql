@@ -3,6 +3,9 @@ DROP SEQUENCE SEQ_CLIENT;
 DROP SEQUENCE SEQ_COMMANDE;
 DROP SEQUENCE SEQ_PRODUIT;
 
+DROP TABLE CHIFFRE_AFFAIRES_JOUR CASCADE CONSTRAINTS;
+DROP TABLE PRODUIT_COMMANDE_ARCHIVE CASCADE CONSTRAINTS;
+DROP TABLE COMMANDE_ARCHIVE CASCADE CONSTRAINTS;
 DROP TABLE PRODUIT_COMMANDE CASCADE CONSTRAINTS;
 DROP TABLE COMMANDE CASCADE CONSTRAINTS;
 DROP TABLE CLIENT CASCADE CONSTRAINTS;
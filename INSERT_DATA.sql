@@ -7,17 +7,17 @@ VALUES ('Domino''s Pizza', '2000', 'Neuchâtel', 'Espa. de l''Europe', '1/3', 'C
 COMMIT;
 
 INSERT INTO PRODUIT(fk_resto, prix_unitaire, nom, description)
-    VALUES (1, 20, 'Tartare de chevreuil', 'De saison');
+    VALUES ((SELECT numero FROM RESTAURANT WHERE nom = 'Alpes Et Lac'), 20, 'Tartare de chevreuil', 'De saison');
 INSERT INTO PRODUIT(fk_resto, prix_unitaire, nom, description)
-    VALUES (2, 5, 'Frites mini', '150g de frites + sauce au choix');
+    VALUES ((SELECT numero FROM RESTAURANT WHERE nom = 'Les Belgeries'), 5, 'Frites mini', '150g de frites + sauce au choix');
 INSERT INTO PRODUIT(fk_resto, prix_unitaire, nom, description)
-    VALUES (2, 7.5, 'Frites normales', '250g de frites + sauce au choix');
+    VALUES ((SELECT numero FROM RESTAURANT WHERE nom = 'Les Belgeries'), 7.5, 'Frites normales', '250g de frites + sauce au choix');
 INSERT INTO PRODUIT(fk_resto, prix_unitaire, nom, description)
-    VALUES (3, 16, 'MARGHERITA', 'Sauce tomate, extra mozzarella (45% MG/ES)');
+    VALUES ((SELECT numero FROM RESTAURANT WHERE nom = 'Domino''s Pizza'), 16, 'MARGHERITA', 'Sauce tomate, extra mozzarella (45% MG/ES)');
 INSERT INTO PRODUIT(fk_resto, prix_unitaire, nom, description)
-    VALUES (3, 18, 'VÉGÉTARIENNE', 'Sauce tomate, mozzarella (45% MG/ES), champignons, poivrons, tomates cherry, olives, oignons rouges');
+    VALUES ((SELECT numero FROM RESTAURANT WHERE nom = 'Domino''s Pizza'), 18, 'VÉGÉTARIENNE', 'Sauce tomate, mozzarella (45% MG/ES), champignons, poivrons, tomates cherry, olives, oignons rouges');
 INSERT INTO PRODUIT(fk_resto, prix_unitaire, nom, description)
-    VALUES (3, 21, 'CHEESE & HAM', 'Sauce tomate, mozzarella (45% MG/ES), jambon (CH)');
+    VALUES ((SELECT numero FROM RESTAURANT WHERE nom = 'Domino''s Pizza'), 21, 'CHEESE & HAM', 'Sauce tomate, mozzarella (45% MG/ES), jambon (CH)');
 COMMIT;
 
 INSERT INTO CLIENT(type, email, est_une_femme, nom, prenom, forme_sociale, code_postal, localite, rue, num_rue, pays, telephone)
@@ -0,0 +1,143 @@
+package ch.hearc.ig.orderresto.benchmark;
+
+import ch.hearc.ig.orderresto.business.Address;
+import ch.hearc.ig.orderresto.business.Customer;
+import ch.hearc.ig.orderresto.business.Order;
+import ch.hearc.ig.orderresto.business.PrivateCustomer;
+import ch.hearc.ig.orderresto.business.Product;
+import ch.hearc.ig.orderresto.business.Restaurant;
+import ch.hearc.ig.orderresto.persistence.utils.HibernateUtil;
+import ch.hearc.ig.orderresto.service.CustomerService;
+import ch.hearc.ig.orderresto.service.OrderEventBus;
+import ch.hearc.ig.orderresto.service.ProductOrderService;
+import ch.hearc.ig.orderresto.service.RestaurantService;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * An in-memory H2 database, in Oracle mode, seeded through the services before the benchmarks of a fork. The
+ * data is drawn from a fixed seed, so that every run benchmarks the same data at a given scale. The scale is
+ * set with JMH parameters, e.g. -p customers=10000 -p orders=100000.
+ * The database settings are system properties read by {@link HibernateUtil}, and can be given to the forks
+ * with -jvmArgsAppend to benchmark another database.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+
+    private static final long SEED = 42;
+
+    @Param("10")
+    public int restaurants;
+
+    @Param("20")
+    public int productsPerRestaurant;
+
+    @Param("1000")
+    public int customers;
+
+    @Param("10000")
+    public int orders;
+
+    List<Restaurant> restaurantList = new ArrayList<>();
+    List<List<Product>> productsByRestaurant = new ArrayList<>();
+    List<Customer> customerList = new ArrayList<>();
+    List<Order> orderList = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void seed() {
+        // Set before the first use of HibernateUtil, unless given on the command line
+        setDefault("jakarta.persistence.jdbc.driver", "org.h2.Driver");
+        setDefault("jakarta.persistence.jdbc.url", "jdbc:h2:mem:benchmark;MODE=Oracle;DB_CLOSE_DELAY=-1");
+        setDefault("jakarta.persistence.jdbc.user", "sa");
+        setDefault("jakarta.persistence.jdbc.password", "");
+        setDefault("jakarta.persistence.schema-generation.database.action", "drop-and-create");
+
+        SplittableRandom random = new SplittableRandom(SEED);
+
+        for (int r = 0; r < this.restaurants; r++) {
+            Restaurant restaurant = new Restaurant(null, "Restaurant " + r, new Address("CH", "2000", "Neuchâtel", "Rue du Seyon", String.valueOf(r + 1)));
+            if (!RestaurantService.getInstance().addRestaurant(restaurant)) {
+                throw new IllegalStateException("The restaurants could not be seeded");
+            }
+            this.restaurantList.add(restaurant);
+
+            List<Product> products = new ArrayList<>();
+            for (int p = 0; p < this.productsPerRestaurant; p++) {
+                BigDecimal unitPrice = BigDecimal.valueOf(500 + random.nextInt(3_000), 2);
+                Product product = new Product(null, "Produit " + r + "-" + p, unitPrice, "Produit de test", restaurant);
+                if (!ProductOrderService.getInstance().addProductToRestaurant(product)) {
+                    throw new IllegalStateException("The products could not be seeded");
+                }
+                products.add(product);
+            }
+            this.productsByRestaurant.add(products);
+        }
+
+        for (int c = 0; c < this.customers; c++) {
+            Customer customer = new PrivateCustomer(null, "+41 79 000 00 00", emailOf(c),
+                    new Address("CH", "2000", "Neuchâtel", "Rue de la Gare", String.valueOf(c + 1)), "F", "Prénom" + c, "Nom" + c);
+            if (!CustomerService.getInstance().addCustomer(customer)) {
+                throw new IllegalStateException("The customers could not be seeded");
+            }
+            this.customerList.add(customer);
+        }
+
+        List<Order> batch = new ArrayList<>();
+        for (int o = 0; o < this.orders; o++) {
+            batch.add(this.newOrder(random));
+            if (batch.size() == 1_000 || o == this.orders - 1) {
+                if (!ProductOrderService.getInstance().addOrdersToRestaurant(batch)) {
+                    throw new IllegalStateException("The orders could not be seeded");
+                }
+                this.orderList.addAll(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() {
+        OrderEventBus.getInstance().shutdown();
+        HibernateUtil.shutdown();
+    }
+
+    /**
+     * @return a new order of one to three products of a restaurant, for a customer, drawn from the given random.
+     */
+    Order newOrder(SplittableRandom random) {
+        int restaurant = random.nextInt(this.restaurantList.size());
+        Order order = new Order.Builder()
+                .withCustomer(this.customerList.get(random.nextInt(this.customerList.size())))
+                .withRestaurant(this.restaurantList.get(restaurant))
+                .withTakeAway(random.nextBoolean())
+                .withWhen(LocalDateTime.now())
+                .build();
+
+        List<Product> products = this.productsByRestaurant.get(restaurant);
+        int productCount = 1 + random.nextInt(3);
+        for (int i = 0; i < productCount; i++) {
+            order.addProduct(products.get(random.nextInt(products.size())));
+        }
+        return order;
+    }
+
+    static String emailOf(int customer) {
+        return "client" + customer + "@benchmark.ch";
+    }
+
+    private static void setDefault(String name, String value) {
+        if (System.getProperty(name) == null) {
+            System.setProperty(name, value);
+        }
+    }
+}
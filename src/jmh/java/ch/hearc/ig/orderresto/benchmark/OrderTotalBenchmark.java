@@ -0,0 +1,60 @@
+package ch.hearc.ig.orderresto.benchmark;
+
+import ch.hearc.ig.orderresto.business.Address;
+import ch.hearc.ig.orderresto.business.Order;
+import ch.hearc.ig.orderresto.business.Product;
+import ch.hearc.ig.orderresto.business.Restaurant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the running total of an order as its products are added, in memory, without the database.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OrderTotalBenchmark {
+
+    @Param({"3", "30"})
+    public int productsPerOrder;
+
+    private List<Product> products;
+
+    @Setup
+    public void createProducts() {
+        SplittableRandom random = new SplittableRandom(42);
+        Restaurant restaurant = new Restaurant(1L, "Restaurant", new Address("CH", "2000", "Neuchâtel", "Rue du Seyon", "1"));
+        this.products = new ArrayList<>();
+        for (long id = 1; id <= this.productsPerOrder; id++) {
+            BigDecimal unitPrice = BigDecimal.valueOf(500 + random.nextInt(3_000), 2);
+            this.products.add(new Product(id, "Produit " + id, unitPrice, "Produit de test", restaurant));
+        }
+    }
+
+    @Benchmark
+    public BigDecimal addProducts() {
+        Order order = new Order.Builder().build();
+        for (Product product : this.products) {
+            order.addProduct(product);
+        }
+        return order.getTotalAmount();
+    }
+}
@@ -0,0 +1,65 @@
+package ch.hearc.ig.orderresto.benchmark;
+
+import ch.hearc.ig.orderresto.business.Customer;
+import ch.hearc.ig.orderresto.business.Product;
+import ch.hearc.ig.orderresto.business.Restaurant;
+import ch.hearc.ig.orderresto.service.CustomerService;
+import ch.hearc.ig.orderresto.service.ProductOrderService;
+import ch.hearc.ig.orderresto.service.RestaurantService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the service calls on the hot paths of the application, each a full unit of work against the
+ * {@link BenchmarkDatabase}. The orders, customers and restaurants used are drawn from a fixed seed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ServiceBenchmark {
+
+    private SplittableRandom random;
+
+    @Setup(Level.Iteration)
+    public void resetRandom() {
+        this.random = new SplittableRandom(7);
+    }
+
+    @Benchmark
+    public boolean addOrderToRestaurant(BenchmarkDatabase database) {
+        return ProductOrderService.getInstance().addOrderToRestaurant(database.newOrder(this.random));
+    }
+
+    @Benchmark
+    public List<Restaurant> getAllRestaurants() {
+        return RestaurantService.getInstance().getAllRestaurants();
+    }
+
+    @Benchmark
+    public Optional<Customer> findCustomerByEmail(BenchmarkDatabase database) {
+        return CustomerService.getInstance().findByEmail(BenchmarkDatabase.emailOf(this.random.nextInt(database.customers)));
+    }
+
+    @Benchmark
+    public Set<Product> getProductsFromOrder(BenchmarkDatabase database) {
+        return ProductOrderService.getInstance().getProductsFromOrder(database.orderList.get(this.random.nextInt(database.orderList.size())));
+    }
+}
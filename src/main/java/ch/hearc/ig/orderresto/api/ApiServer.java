@@ -0,0 +1,480 @@
+package ch.hearc.ig.orderresto.api;
+
+import ch.hearc.ig.orderresto.business.Customer;
+import ch.hearc.ig.orderresto.business.KitchenTicket;
+import ch.hearc.ig.orderresto.business.MenuSnapshot;
+import ch.hearc.ig.orderresto.business.Order;
+import ch.hearc.ig.orderresto.business.OrganizationCustomer;
+import ch.hearc.ig.orderresto.business.PrivateCustomer;
+import ch.hearc.ig.orderresto.business.Product;
+import ch.hearc.ig.orderresto.business.Restaurant;
+import ch.hearc.ig.orderresto.service.CustomerService;
+import ch.hearc.ig.orderresto.service.KitchenScheduler;
+import ch.hearc.ig.orderresto.service.MenuService;
+import ch.hearc.ig.orderresto.service.ProductOrderService;
+import ch.hearc.ig.orderresto.service.RequestEngine;
+import ch.hearc.ig.orderresto.service.RestaurantService;
+import ch.hearc.ig.orderresto.utils.Json;
+import ch.hearc.ig.orderresto.utils.LatencyHistogram;
+import ch.hearc.ig.orderresto.utils.SimpleLogger;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * HTTP/JSON front end of the application, on the JDK's built-in HTTP server. Each exchange is read and answered
+ * on its own virtual thread, and its service calls are run by the {@link RequestEngine}, in one unit of work and
+ * within the admission limit of the engine: an exchange that waits too long to be run is answered with a 503.
+ * Orders are placed in their own transaction instead, see {@link ProductOrderService#placeOrder}.
+ * The latency of each route is recorded and served by GET /metrics.
+ *
+ * <pre>
+ * GET  /restaurants                  the restaurants
+ * GET  /restaurants/{id}/menu        the menu of a restaurant
+ * GET  /restaurants/{id}/kitchen     the orders scheduled in the kitchen of a restaurant, by priority
+ * POST /restaurants/{id}/kitchen/next takes the next order to prepare, 204 if there is none
+ * GET  /customers?email=...          a customer, by email
+ * POST /orders                       places an order: {"customerId": 1, "restaurantId": 1, "productIds": [1, 2], "takeAway": false}
+ *                                    with an optional Idempotency-Key header, see ProductOrderService.placeOrder
+ * GET  /metrics                      the latency of each route
+ * </pre>
+ */
+public class ApiServer {
+
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final int MAX_BODY_BYTES = 64 * 1_024;
+
+    private final int port;
+    private final int backlog;
+
+    private final RestaurantService restaurantService = RestaurantService.getInstance();
+    private final CustomerService customerService = CustomerService.getInstance();
+    private final MenuService menuService = MenuService.getInstance();
+    private final ProductOrderService productOrderService = ProductOrderService.getInstance();
+    private final KitchenScheduler kitchenScheduler = KitchenScheduler.getInstance();
+    private final RequestEngine requestEngine = RequestEngine.getInstance();
+
+    private final Map<String, LatencyHistogram> latencyByRoute = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("api-", 0).factory());
+    private HttpServer server;
+
+    private ApiServer(Builder builder) {
+        this.port = builder.port;
+        this.backlog = builder.backlog;
+    }
+
+    /**
+     * Starts listening, the server runs until stopped.
+     */
+    public void start() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(this.port), this.backlog);
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/restaurants", this::handleRestaurants);
+        this.server.createContext("/customers", this::handleCustomers);
+        this.server.createContext("/orders", this::handleOrders);
+        this.server.createContext("/metrics", this::handleMetrics);
+        this.server.start();
+
+        SimpleLogger.info("API listening on port " + this.server.getAddress().getPort());
+    }
+
+    /**
+     * Stops accepting exchanges, lets the running ones complete for up to a second, and logs the latencies.
+     */
+    public void stop() {
+        if (this.server == null) {
+            return;
+        }
+        this.server.stop(1);
+        this.executor.shutdown();
+        SimpleLogger.info("API stopped, " + this.summary());
+    }
+
+    /**
+     * @return the port the server listens on, once started.
+     */
+    public int getPort() {
+        return this.server == null ? this.port : this.server.getAddress().getPort();
+    }
+
+    /**
+     * @return the latency of each route, on one line, suitable for the logs.
+     */
+    public String summary() {
+        StringBuilder summary = new StringBuilder("latency");
+        this.latencyByRoute.forEach((route, latency) -> summary.append(" [").append(route).append(' ').append(latency.summary()).append(']'));
+        return summary.toString();
+    }
+
+    private void handleRestaurants(HttpExchange exchange) {
+        String[] path = exchange.getRequestURI().getPath().split("/");
+        // Taking the next order changes the queue of the kitchen
+        boolean takesNextOrder = path.length == 5 && path[3].equals("kitchen") && path[4].equals("next");
+
+        this.handle(exchange, takesNextOrder ? "POST" : "GET", true, () -> {
+            if (path.length == 2) {
+                return new Response("GET /restaurants", 200, this.restaurants());
+            }
+            if (path.length == 4 && path[3].equals("menu")) {
+                return new Response("GET /restaurants/{id}/menu", 200, this.menu(this.restaurantOf(parseId(path[2]))));
+            }
+            if (path.length == 4 && path[3].equals("kitchen")) {
+                List<Object> tickets = new ArrayList<>();
+                for (KitchenTicket ticket : this.kitchenScheduler.getOpenTickets(this.restaurantOf(parseId(path[2])).getId())) {
+                    tickets.add(toJson(ticket));
+                }
+                return new Response("GET /restaurants/{id}/kitchen", 200, tickets);
+            }
+            if (takesNextOrder) {
+                KitchenTicket ticket = this.kitchenScheduler.pollNext(this.restaurantOf(parseId(path[2])).getId());
+                return new Response("POST /restaurants/{id}/kitchen/next", ticket == null ? 204 : 200, ticket == null ? null : toJson(ticket));
+            }
+            throw new ApiException(404, "Unknown resource");
+        });
+    }
+
+    private void handleCustomers(HttpExchange exchange) {
+        this.handle(exchange, "GET", true, () -> {
+            String email = queryParameters(exchange).get("email");
+            if (email == null || email.isBlank()) {
+                throw new ApiException(400, "The email parameter is required");
+            }
+            Customer customer = this.customerService.findByEmail(email)
+                    .orElseThrow(() -> new ApiException(404, "No customer with this email"));
+            return new Response("GET /customers", 200, toJson(customer));
+        });
+    }
+
+    // Without a unit of work, the order is placed in its own transaction: a concurrent submission of the same
+    // idempotency key fails on its insert and gets the order of the other one, and the 201 follows the commit
+    private void handleOrders(HttpExchange exchange) {
+        this.handle(exchange, "POST", false, () -> this.placeOrder(exchange));
+    }
+
+    // Served without the engine, so that the metrics remain available when it is saturated
+    private void handleMetrics(HttpExchange exchange) {
+        long start = System.nanoTime();
+        if (!exchange.getRequestMethod().equals("GET")) {
+            this.send(exchange, new Response(exchange.getRequestMethod() + " /metrics", 405, Map.of("error", "Method not allowed")), start);
+            return;
+        }
+
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        this.latencyByRoute.forEach((route, latency) -> {
+            Map<String, Object> routeMetrics = new LinkedHashMap<>();
+            routeMetrics.put("count", latency.getCount());
+            routeMetrics.put("meanMillis", latency.getMeanMillis());
+            routeMetrics.put("p50Millis", latency.getPercentileMillis(50));
+            routeMetrics.put("p99Millis", latency.getPercentileMillis(99));
+            routeMetrics.put("maxMillis", latency.getMaxMillis());
+            metrics.put(route, routeMetrics);
+        });
+        this.send(exchange, new Response("GET /metrics", 200, metrics), start);
+    }
+
+    private List<Object> restaurants() {
+        List<Object> restaurants = new ArrayList<>();
+        for (Restaurant restaurant : this.restaurantService.getAllRestaurants()) {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("id", restaurant.getId());
+            json.put("name", restaurant.getName());
+            json.put("locality", restaurant.getAddress() == null ? null : restaurant.getAddress().getLocality());
+            restaurants.add(json);
+        }
+        return restaurants;
+    }
+
+    private Map<String, Object> menu(Restaurant restaurant) {
+        MenuSnapshot menu = this.menuOf(restaurant);
+
+        List<Object> products = new ArrayList<>(menu.size());
+        for (int i = 0; i < menu.size(); i++) {
+            Map<String, Object> product = new LinkedHashMap<>();
+            product.put("id", menu.getProductId(i));
+            product.put("name", menu.getProductName(i));
+            product.put("unitPrice", menu.getUnitPrice(i));
+            products.add(product);
+        }
+
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("restaurantId", menu.getRestaurantId());
+        json.put("version", menu.getVersion());
+        json.put("products", products);
+        return json;
+    }
+
+    private Response placeOrder(HttpExchange exchange) throws IOException {
+        Map<?, ?> body = readObject(exchange);
+
+        Customer customer = this.customerService.getCustomerById(requiredId(body, "customerId"))
+                .orElseThrow(() -> new ApiException(404, "Unknown customer"));
+        Restaurant restaurant = this.restaurantOf(requiredId(body, "restaurantId"));
+        MenuSnapshot menu = this.menuOf(restaurant);
+
+        if (!(body.get("productIds") instanceof List<?> productIds) || productIds.isEmpty()) {
+            throw new ApiException(400, "productIds must be a non-empty array");
+        }
+
+        Order order = new Order.Builder()
+                .withCustomer(customer)
+                .withRestaurant(restaurant)
+                .withTakeAway(Boolean.TRUE.equals(body.get("takeAway")))
+                .withWhen(LocalDateTime.now())
+                .withIdempotencyKey(exchange.getRequestHeaders().getFirst(IDEMPOTENCY_KEY_HEADER))
+                .build();
+        // The products are taken from the menu, which also checks that they belong to the restaurant. A product
+        // given twice is a single line of the order
+        Map<Integer, Product> orderedProducts = new HashMap<>();
+        for (Object productId : productIds) {
+            int index;
+            try {
+                index = productId instanceof BigDecimal id ? menu.indexOf(id.longValueExact()) : -1;
+            } catch (ArithmeticException e) {
+                index = -1;
+            }
+            if (index < 0) {
+                throw new ApiException(400, "Product " + productId + " is not on the menu of the restaurant");
+            }
+            order.addProduct(orderedProducts.computeIfAbsent(index, menu::getProduct));
+        }
+
+        Long orderId = this.productOrderService.placeOrder(order);
+        if (orderId == null) {
+            throw new ApiException(500, "The order could not be placed");
+        }
+
+        // A retried submission gets the order placed by the first one
+        boolean placedNow = orderId.equals(order.getId());
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("orderId", orderId);
+        json.put("duplicate", !placedNow);
+        if (placedNow) {
+            json.put("totalAmount", order.getTotalAmount());
+        }
+        return new Response("POST /orders", placedNow ? 201 : 200, json);
+    }
+
+    private Restaurant restaurantOf(Long restaurantId) {
+        return this.restaurantService.getRestaurantById(restaurantId)
+                .orElseThrow(() -> new ApiException(404, "Unknown restaurant"));
+    }
+
+    private MenuSnapshot menuOf(Restaurant restaurant) {
+        Optional<MenuSnapshot> menu = this.menuService.getMenu(restaurant);
+        if (menu.isEmpty() || menu.get().size() == 0) {
+            throw new ApiException(404, "The restaurant has no menu");
+        }
+        return menu.get();
+    }
+
+    /**
+     * Runs a handler through the request engine, in one unit of work or with each service call in its own
+     * transaction, writes its response as JSON and records its latency. Errors are answered with their status and
+     * message, unexpected ones with a 500, and exchanges the engine could not run in time with a 503.
+     */
+    private void handle(HttpExchange exchange, String method, boolean inUnitOfWork, Handler handler) {
+        long start = System.nanoTime();
+        String route = exchange.getRequestMethod() + " " + exchange.getHttpContext().getPath();
+        Response response;
+
+        if (!exchange.getRequestMethod().equals(method)) {
+            response = new Response(route, 405, Map.of("error", "Method not allowed"));
+        } else {
+            try {
+                response = (inUnitOfWork
+                        ? this.requestEngine.submit(() -> run(route, handler))
+                        : this.requestEngine.submitStandalone(() -> run(route, handler))
+                ).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RejectedExecutionException) {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    response = new Response(route, 503, Map.of("error", "The server is busy, please retry later"));
+                } else {
+                    // The failure was logged by the engine
+                    response = new Response(route, 500, Map.of("error", "Internal error"));
+                }
+            }
+        }
+
+        this.send(exchange, response, start);
+    }
+
+    // Client errors are answered as such, they do not fail the request
+    private static Response run(String route, Handler handler) {
+        try {
+            return handler.handle();
+        } catch (ApiException e) {
+            return new Response(route, e.status, Map.of("error", e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            return new Response(route, 400, Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void send(HttpExchange exchange, Response response, long start) {
+        try (exchange) {
+            if (response.status == 204) {
+                exchange.sendResponseHeaders(response.status, -1);
+                return;
+            }
+            byte[] json = Json.write(response.body).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(response.status, json.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(json);
+            }
+        } catch (IOException e) {
+            SimpleLogger.warning("Could not send the response of " + response.route + ": " + e.getMessage());
+        } finally {
+            this.latencyByRoute.computeIfAbsent(response.route, r -> new LatencyHistogram()).record(System.nanoTime() - start);
+        }
+    }
+
+    private static Map<?, ?> readObject(HttpExchange exchange) throws IOException {
+        byte[] bytes;
+        try (InputStream input = exchange.getRequestBody()) {
+            bytes = input.readNBytes(MAX_BODY_BYTES + 1);
+        }
+        if (bytes.length > MAX_BODY_BYTES) {
+            throw new ApiException(413, "The request body is too large");
+        }
+        if (!(Json.parse(new String(bytes, StandardCharsets.UTF_8)) instanceof Map<?, ?> object)) {
+            throw new ApiException(400, "The request body must be a JSON object");
+        }
+        return object;
+    }
+
+    private static Long requiredId(Map<?, ?> body, String name) {
+        if (!(body.get(name) instanceof BigDecimal id)) {
+            throw new ApiException(400, name + " is required");
+        }
+        try {
+            return id.longValueExact();
+        } catch (ArithmeticException e) {
+            throw new ApiException(400, name + " must be an integer id");
+        }
+    }
+
+    private static Long parseId(String id) {
+        try {
+            return Long.valueOf(id);
+        } catch (NumberFormatException e) {
+            throw new ApiException(404, "Unknown resource");
+        }
+    }
+
+    private static Map<String, String> queryParameters(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return parameters;
+        }
+        for (String parameter : query.split("&")) {
+            int separator = parameter.indexOf('=');
+            if (separator > 0) {
+                parameters.put(URLDecoder.decode(parameter.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    private static Map<String, Object> toJson(Customer customer) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", customer.getId());
+        json.put("email", customer.getEmail());
+        json.put("phone", customer.getPhone());
+        if (customer instanceof PrivateCustomer privateCustomer) {
+            json.put("type", "private");
+            json.put("firstName", privateCustomer.getFirstName());
+            json.put("lastName", privateCustomer.getLastName());
+        } else if (customer instanceof OrganizationCustomer organizationCustomer) {
+            json.put("type", "organization");
+            json.put("name", organizationCustomer.getName());
+            json.put("legalForm", organizationCustomer.getLegalForm());
+        }
+        return json;
+    }
+
+    private static Map<String, Object> toJson(KitchenTicket ticket) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("orderId", ticket.getOrderId());
+        json.put("takeAway", ticket.isTakeAway());
+        json.put("when", ticket.getWhen().toString());
+        json.put("dueAt", ticket.getDueAt().toString());
+        return json;
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        Response handle() throws IOException;
+    }
+
+    private static class Response {
+
+        private final String route;
+        private final int status;
+        private final Object body;
+
+        private Response(String route, int status, Object body) {
+            this.route = route;
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    private static class ApiException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        private ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    public static class Builder {
+        private int port = Integer.getInteger("orderresto.api.port", 8080);
+        private int backlog = Integer.getInteger("orderresto.api.backlog", 256);
+
+        /**
+         * @param port the port to listen on, 0 for any free port.
+         */
+        public Builder withPort(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Builder withBacklog(int backlog) {
+            this.backlog = backlog;
+            return this;
+        }
+
+        public ApiServer build() {
+            return new ApiServer(this);
+        }
+    }
+}
@@ -1,9 +1,21 @@
 package ch.hearc.ig.orderresto.application;
 
+import ch.hearc.ig.orderresto.api.ApiServer;
+import ch.hearc.ig.orderresto.load.LoadGenerator;
 import ch.hearc.ig.orderresto.persistence.utils.FakeDbHibernateUtil;
+import ch.hearc.ig.orderresto.persistence.utils.HibernateUtil;
+import ch.hearc.ig.orderresto.presentation.BatchCLI;
 import ch.hearc.ig.orderresto.presentation.MainCLI;
+import ch.hearc.ig.orderresto.service.KitchenScheduler;
+import ch.hearc.ig.orderresto.service.OrderArchiver;
+import ch.hearc.ig.orderresto.service.OrderEventBus;
+import ch.hearc.ig.orderresto.service.OrderIntakeQueue;
+import ch.hearc.ig.orderresto.service.RequestEngine;
+import ch.hearc.ig.orderresto.service.RevenueService;
 import ch.hearc.ig.orderresto.utils.SimpleLogger;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -16,10 +28,77 @@ public class Main {
         // As Hibernate is very verbose by default, set its logging off
         Logger.getLogger("org.hibernate").setLevel(Level.OFF);
 
+        // "archive" runs the archival job instead of the application, e.g. from a nightly scheduled task
+        if (args.length > 0 && args[0].equals("archive")) {
+            new OrderArchiver.Builder().build().archive();
+            HibernateUtil.shutdown();
+            return;
+        }
+
+        // "rebuild-revenue" recomputes the daily revenue rollups from the orders, with the application stopped
+        if (args.length > 0 && args[0].equals("rebuild-revenue")) {
+            RevenueService.getInstance().rebuildRollups();
+            HibernateUtil.shutdown();
+            return;
+        }
+
         // Create some dummy data when the database is empty
         FakeDbHibernateUtil fakeDbHibernateUtil = new FakeDbHibernateUtil();
         fakeDbHibernateUtil.initFakePopulation();
 
+        // The kitchens get the orders placed before the start, then the new ones as they are committed
+        KitchenScheduler.getInstance().start();
+
+        // "serve" runs the HTTP API instead of the CLI, until the process is stopped
+        if (args.length > 0 && args[0].equals("serve")) {
+            serve();
+            return;
+        }
+
+        // "batch <script>" places the orders of a script instead of running the interactive CLI
+        if (args.length > 1 && args[0].equals("batch")) {
+            boolean placed = new BatchCLI(Path.of(args[1])).run();
+            OrderIntakeQueue.getInstance().shutdown();
+            OrderEventBus.getInstance().shutdown();
+            HibernateUtil.shutdown();
+            if (!placed) {
+                System.exit(1);
+            }
+            return;
+        }
+
+        // "load" drives a synthetic workload against the services and writes its latencies to a report
+        if (args.length > 0 && args[0].equals("load")) {
+            boolean completed = new LoadGenerator.Builder().build().run();
+            OrderIntakeQueue.getInstance().shutdown();
+            OrderEventBus.getInstance().shutdown();
+            HibernateUtil.shutdown();
+            if (!completed) {
+                System.exit(1);
+            }
+            return;
+        }
+
         (new MainCLI()).run();
     }
+
+    private static void serve() {
+        ApiServer apiServer = new ApiServer.Builder().build();
+
+        // Pending orders are committed and the connections closed when the process is stopped (e.g. Ctrl+C)
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            apiServer.stop();
+            RequestEngine.getInstance().shutdown();
+            OrderIntakeQueue.getInstance().shutdown();
+            OrderEventBus.getInstance().shutdown();
+            HibernateUtil.shutdown();
+        }));
+
+        try {
+            apiServer.start();
+        } catch (IOException e) {
+            SimpleLogger.error("An error occured while trying to start the API: " + e.getMessage());
+            System.exit(1);
+        }
+    }
 }
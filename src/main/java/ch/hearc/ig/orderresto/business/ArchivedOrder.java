@@ -0,0 +1,87 @@
+package ch.hearc.ig.orderresto.business;
+
+import ch.hearc.ig.orderresto.persistence.converters.BooleanConverter;
+import jakarta.persistence.*;
+import org.hibernate.annotations.Immutable;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Set;
+
+/**
+ * An order moved out of COMMANDE by the archival job, once it became older than the retention period.
+ * Archived orders keep their number, and are only ever written by the job, hence read-only here. Their idempotency
+ * key is not kept, it has outlived its lifetime (see ProductOrderService#IDEMPOTENCY_KEY_LIFETIME).
+ */
+@Entity
+@Immutable
+@Table(
+        name = "COMMANDE_ARCHIVE",
+        indexes = {
+                @Index(name = "IX_COMMANDE_ARCHIVE_CLIENT", columnList = "FK_CLIENT, QUAND"),
+                @Index(name = "IX_COMMANDE_ARCHIVE_RESTO", columnList = "FK_RESTO, QUAND")
+        }
+)
+public class ArchivedOrder {
+
+    @Id
+    @Column(name = "NUMERO")
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "FK_CLIENT", nullable = false)
+    private Customer customer;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "FK_RESTO", nullable = false)
+    private Restaurant restaurant;
+
+    @ManyToMany
+    @JoinTable(
+            name = "PRODUIT_COMMANDE_ARCHIVE",
+            joinColumns = @JoinColumn(name = "FK_COMMANDE"),
+            inverseJoinColumns = @JoinColumn(name = "FK_PRODUIT")
+    )
+    private Set<Product> products;
+
+    @Convert(converter = BooleanConverter.class)
+    @Column(name = "A_EMPORTER", nullable = false)
+    private Boolean takeAway;
+
+    @Column(name = "QUAND", nullable = false)
+    private LocalDateTime when;
+
+    @Column(name = "MONTANT_TOTAL", nullable = false, precision = 9, scale = 2)
+    private BigDecimal totalAmount;
+
+    public ArchivedOrder() {}
+
+    public Long getId() {
+        return id;
+    }
+
+    public Customer getCustomer() {
+        return customer;
+    }
+
+    public Restaurant getRestaurant() {
+        return restaurant;
+    }
+
+    public Set<Product> getProducts() {
+        return products;
+    }
+
+    public Boolean getTakeAway() {
+        return takeAway;
+    }
+
+    public LocalDateTime getWhen() {
+        return when;
+    }
+
+    public BigDecimal getTotalAmount() {
+        return totalAmount;
+    }
+
+}
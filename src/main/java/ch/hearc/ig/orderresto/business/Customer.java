@@ -1,6 +1,10 @@
 package ch.hearc.ig.orderresto.business;
 
+import ch.hearc.ig.orderresto.persistence.utils.CacheMetrics;
+import ch.hearc.ig.orderresto.persistence.utils.HibernateUtil;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -12,16 +16,30 @@ import java.util.Set;
 )
 @DiscriminatorValue("C")
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheMetrics.CUSTOMER_REGION)
 @Table(
-        name = "CLIENT"
+        name = "CLIENT",
+        indexes = @Index(name = "UX_CLIENT_EMAIL", columnList = "EMAIL", unique = true)
+)
+@NamedQuery(
+        name = Customer.FIND_BY_EMAIL,
+        query = "SELECT c FROM Customer c WHERE c.email = :email"
 )
 public abstract class Customer {
 
+    public static final String FIND_BY_EMAIL = "Customer.findByEmail";
+
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "SEQ_CLIENT")
+    @SequenceGenerator(name = "SEQ_CLIENT", sequenceName = "SEQ_CLIENT", allocationSize = HibernateUtil.ID_ALLOCATION_SIZE)
     @Column(name = "NUMERO")
     private Long id;
 
+    @Version
+    @Column(name = "VERSION", nullable = false)
+    private Long version;
+
     @Column(name = "TELEPHONE", nullable = false)
     private String phone;
 
@@ -48,6 +66,10 @@ public abstract class Customer {
         return id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
     public String getPhone() {
         return phone;
     }
@@ -68,6 +90,10 @@ public abstract class Customer {
         this.id = id;
     }
 
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public void setPhone(String phone) {
         this.phone = phone;
     }
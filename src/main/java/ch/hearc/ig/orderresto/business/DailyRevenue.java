@@ -0,0 +1,113 @@
+package ch.hearc.ig.orderresto.business;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.Immutable;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Number of orders and revenue of a restaurant for one day, kept up to date as orders are placed, modified and
+ * removed, so that the reports never have to read the orders themselves.
+ * The rows are only written by set-based statements (see RevenueService), hence read-only here.
+ */
+@Entity
+@Immutable
+@IdClass(DailyRevenue.Key.class)
+@Table(
+        name = "CHIFFRE_AFFAIRES_JOUR",
+        indexes = @Index(name = "IX_CHIFFRE_AFFAIRES_JOUR", columnList = "JOUR")
+)
+public class DailyRevenue {
+
+    @Id
+    @Column(name = "FK_RESTO")
+    private Long restaurantId;
+
+    @Id
+    @Column(name = "JOUR")
+    private LocalDate day;
+
+    @Column(name = "NOMBRE_COMMANDES", nullable = false)
+    private long orderCount;
+
+    @Column(name = "MONTANT_TOTAL", nullable = false, precision = 12, scale = 2)
+    private BigDecimal totalAmount;
+
+    public DailyRevenue() {}
+
+    public DailyRevenue(Long restaurantId, LocalDate day, long orderCount, BigDecimal totalAmount) {
+        this.restaurantId = restaurantId;
+        this.day = day;
+        this.orderCount = orderCount;
+        this.totalAmount = totalAmount;
+    }
+
+    public Long getRestaurantId() {
+        return restaurantId;
+    }
+
+    public LocalDate getDay() {
+        return day;
+    }
+
+    public long getOrderCount() {
+        return orderCount;
+    }
+
+    public BigDecimal getTotalAmount() {
+        return totalAmount;
+    }
+
+    /**
+     * Identifier of a rollup: a restaurant and a day. Keys sort by restaurant then day.
+     */
+    public static class Key implements Serializable, Comparable<Key> {
+
+        private static final long serialVersionUID = 1L;
+
+        private Long restaurantId;
+        private LocalDate day;
+
+        public Key() {}
+
+        public Key(Long restaurantId, LocalDate day) {
+            this.restaurantId = restaurantId;
+            this.day = day;
+        }
+
+        public Long getRestaurantId() {
+            return restaurantId;
+        }
+
+        public LocalDate getDay() {
+            return day;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int byRestaurant = this.restaurantId.compareTo(other.restaurantId);
+            return byRestaurant != 0 ? byRestaurant : this.day.compareTo(other.day);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return Objects.equals(this.restaurantId, key.restaurantId) && Objects.equals(this.day, key.day);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.restaurantId, this.day);
+        }
+    }
+
+}
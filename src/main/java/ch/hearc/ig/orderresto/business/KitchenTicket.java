@@ -0,0 +1,52 @@
+package ch.hearc.ig.orderresto.business;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+
+/**
+ * An order waiting to be prepared by the kitchen of its restaurant, as scheduled by the kitchen queues.
+ */
+public class KitchenTicket {
+
+    // The kitchen prepares the orders due first, take away orders first when due at the same time as their
+    // customer is waiting at the counter, then in the order they were placed
+    public static final Comparator<KitchenTicket> BY_PRIORITY = Comparator
+            .comparing(KitchenTicket::getDueAt)
+            .thenComparing(KitchenTicket::isTakeAway, Comparator.reverseOrder())
+            .thenComparingLong(KitchenTicket::getOrderId);
+
+    private final long orderId;
+    private final long restaurantId;
+    private final boolean takeAway;
+    private final LocalDateTime when;
+    private final LocalDateTime dueAt;
+
+    public KitchenTicket(long orderId, long restaurantId, boolean takeAway, LocalDateTime when, LocalDateTime dueAt) {
+        this.orderId = orderId;
+        this.restaurantId = restaurantId;
+        this.takeAway = takeAway;
+        this.when = when;
+        this.dueAt = dueAt;
+    }
+
+    public long getOrderId() {
+        return orderId;
+    }
+
+    public long getRestaurantId() {
+        return restaurantId;
+    }
+
+    public boolean isTakeAway() {
+        return takeAway;
+    }
+
+    public LocalDateTime getWhen() {
+        return when;
+    }
+
+    public LocalDateTime getDueAt() {
+        return dueAt;
+    }
+
+}
@@ -0,0 +1,111 @@
+package ch.hearc.ig.orderresto.business;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Immutable view of the catalog of a restaurant at one point in time, with the lines displayed to the customers
+ * already formatted. A snapshot is never modified: when the catalog changes, a new snapshot with a higher
+ * version replaces it, so it can be shared by all the threads without locking.
+ */
+public final class MenuSnapshot {
+
+    private final long restaurantId;
+    private final long version;
+    private final String title;
+    private final long[] productIds;
+    private final String[] productNames;
+    private final BigDecimal[] unitPrices;
+    private final String[] lines;
+    private final Product[] products;
+
+    /**
+     * @param restaurant the restaurant whose catalog is taken.
+     * @param version the version of the snapshot, higher for a more recent catalog.
+     * @param catalog the products of the restaurant, in the order they are displayed.
+     */
+    public MenuSnapshot(Restaurant restaurant, long version, List<Product> catalog) {
+        this.restaurantId = restaurant.getId();
+        this.version = version;
+        this.title = String.format("Bienvenue chez %s. Choisissez un de nos produits:", restaurant.getName());
+
+        int size = catalog.size();
+        this.productIds = new long[size];
+        this.productNames = new String[size];
+        this.unitPrices = new BigDecimal[size];
+        this.lines = new String[size];
+        this.products = new Product[size];
+
+        for (int i = 0; i < size; i++) {
+            Product product = catalog.get(i);
+            this.productIds[i] = product.getId();
+            this.productNames[i] = product.getName();
+            this.unitPrices[i] = product.getUnitPrice();
+            this.lines[i] = String.format("%d. %s", i, product);
+            this.products[i] = product;
+        }
+    }
+
+    public long getRestaurantId() {
+        return restaurantId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the line introducing the menu.
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * @return the number of products on the menu.
+     */
+    public int size() {
+        return productIds.length;
+    }
+
+    public long getProductId(int index) {
+        return productIds[index];
+    }
+
+    public String getProductName(int index) {
+        return productNames[index];
+    }
+
+    public BigDecimal getUnitPrice(int index) {
+        return unitPrices[index];
+    }
+
+    /**
+     * @return the formatted line of the product, prefixed with its index.
+     */
+    public String getLine(int index) {
+        return lines[index];
+    }
+
+    /**
+     * @return the index of the product on the menu, -1 if it is not on it.
+     */
+    public int indexOf(long productId) {
+        // Menus are short, a scan is cheaper than hashing
+        for (int i = 0; i < productIds.length; i++) {
+            if (productIds[i] == productId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return a copy of the product as it was loaded for the snapshot (detached), which the caller is free to
+     * modify. Each call returns a new copy, equal to the others (see {@link Product#equals}).
+     */
+    public Product getProduct(int index) {
+        return products[index].copy();
+    }
+
+}
@@ -1,6 +1,7 @@
 package ch.hearc.ig.orderresto.business;
 
 import ch.hearc.ig.orderresto.persistence.converters.BooleanConverter;
+import ch.hearc.ig.orderresto.persistence.utils.HibernateUtil;
 import jakarta.persistence.*;
 
 import java.math.BigDecimal;
@@ -10,15 +11,40 @@ import java.util.Set;
 
 @Entity
 @Table(
-        name = "COMMANDE"
+        name = "COMMANDE",
+        indexes = {
+                @Index(name = "IX_COMMANDE_RESTO_MONTANT", columnList = "FK_RESTO, MONTANT_TOTAL"),
+                @Index(name = "IX_COMMANDE_QUAND", columnList = "QUAND"),
+                @Index(name = "IX_COMMANDE_RESTO_QUAND", columnList = "FK_RESTO, QUAND"),
+                @Index(name = "UX_COMMANDE_CLE_IDEMPOTENCE", columnList = "CLE_IDEMPOTENCE", unique = true)
+        }
+)
+@NamedEntityGraph(
+        name = Order.WITH_DETAILS,
+        attributeNodes = {
+                @NamedAttributeNode("customer"),
+                @NamedAttributeNode("restaurant"),
+                @NamedAttributeNode(value = "products", subgraph = "products")
+        },
+        subgraphs = @NamedSubgraph(name = "products", attributeNodes = @NamedAttributeNode("restaurant"))
 )
 public class Order {
 
+    // Fetch plan loading an order with everything needed to display it, in a single statement
+    public static final String WITH_DETAILS = "Order.withDetails";
+
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "SEQ_COMMANDE")
+    @SequenceGenerator(name = "SEQ_COMMANDE", sequenceName = "SEQ_COMMANDE", allocationSize = HibernateUtil.ID_ALLOCATION_SIZE)
     @Column(name = "NUMERO")
     private Long id;
 
+    // Incremented on every update, an update based on an outdated version fails instead of overwriting
+    // the changes made in the meantime
+    @Version
+    @Column(name = "VERSION", nullable = false)
+    private Long version;
+
     @ManyToOne
     @JoinColumn(name = "FK_CLIENT", nullable = false)
     private Customer customer;
@@ -43,9 +69,24 @@ public class Order {
     @Column(name = "QUAND", nullable = false)
     private LocalDateTime when;
 
-    @Transient
+    // Sum of the unit prices of the products, maintained on every write so that orders can be listed,
+    // sorted and filtered by amount without reading their products
+    @Column(name = "MONTANT_TOTAL", nullable = false, precision = 9, scale = 2)
     private BigDecimal totalAmount;
 
+    // Chosen by the client for each submission and kept when it retries, so that a retried submission
+    // cannot create the order twice. Optional, orders without a key are not deduplicated
+    @Column(name = "CLE_IDEMPOTENCE", length = 64, updatable = false)
+    private String idempotencyKey;
+
+    // The total in cents, kept up to date as products are added, the stored total is derived from it only when
+    // the order is written (see PricingEngine)
+    @Transient
+    private long totalCents;
+
+    @Transient
+    private boolean totalAmountOutdated;
+
     public Order() {}
 
     public Order(Long id, Customer customer, Restaurant restaurant, Boolean takeAway, LocalDateTime when) {
@@ -54,7 +95,7 @@ public class Order {
         this.restaurant = restaurant;
         this.products = new HashSet<>();
         this.takeAway = takeAway;
-        this.totalAmount = new BigDecimal(0);
+        this.totalAmount = BigDecimal.ZERO;
         this.when = when;
     }
 
@@ -62,6 +103,10 @@ public class Order {
         return id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
     public Customer getCustomer() {
         return customer;
     }
@@ -83,13 +128,25 @@ public class Order {
     }
 
     public BigDecimal getTotalAmount() {
-        return totalAmount;
+        return this.totalAmountOutdated ? PricingEngine.toAmount(this.totalCents) : totalAmount;
+    }
+
+    public long getTotalCents() {
+        return totalCents;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
     }
 
     public void setId(Long id) {
         this.id = id;
     }
 
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public void setCustomer(Customer customer) {
         this.customer = customer;
     }
@@ -110,13 +167,53 @@ public class Order {
         this.when = when;
     }
 
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
     public void setTotalAmount(BigDecimal totalAmount) {
         this.totalAmount = totalAmount;
+        this.totalCents = PricingEngine.toCents(totalAmount);
+        this.totalAmountOutdated = false;
     }
 
     public void addProduct(Product product) {
-        this.products.add(product);
-        this.totalAmount = this.totalAmount.add(product.getUnitPrice());
+        if (this.products.add(product)) {
+            this.totalCents = PricingEngine.add(this.totalCents, product.getUnitPriceCents());
+            this.totalAmountOutdated = true;
+        }
+    }
+
+    /**
+     * Computes the total amount again from the products of the order, to be called before the order is written.
+     * The products must be loaded, i.e. the order is new or managed by the current unit of work.
+     */
+    public void recalculateTotalAmount() {
+        long total = 0;
+        for (Product product : this.products) {
+            total = PricingEngine.add(total, product.getUnitPriceCents());
+        }
+        this.totalCents = total;
+        // Set right away, as Hibernate only writes the order if it sees the stored total change
+        this.totalAmount = PricingEngine.toAmount(total);
+        this.totalAmountOutdated = false;
+    }
+
+    @PostLoad
+    private void loadTotalCents() {
+        this.totalCents = PricingEngine.toCents(this.totalAmount);
+        this.totalAmountOutdated = false;
+    }
+
+    // The stored total must be up to date and fit its column before the order is written
+    @PrePersist
+    @PreUpdate
+    private void storeTotalAmount() {
+        PricingEngine.checkStorable(this.totalCents);
+        if (this.totalAmountOutdated) {
+            this.totalAmount = PricingEngine.toAmount(this.totalCents);
+            this.totalAmountOutdated = false;
+        }
     }
 
     public static class Builder {
@@ -125,6 +222,7 @@ public class Order {
         private Restaurant restaurant;
         private Boolean takeAway;
         private LocalDateTime when;
+        private String idempotencyKey;
 
         public Builder withId(Long id) {
             this.id = id;
@@ -151,8 +249,15 @@ public class Order {
             return this;
         }
 
+        public Builder withIdempotencyKey(String idempotencyKey) {
+            this.idempotencyKey = idempotencyKey;
+            return this;
+        }
+
         public Order build() {
-            return new Order(this.id, this.customer, this.restaurant, this.takeAway, this.when);
+            Order order = new Order(this.id, this.customer, this.restaurant, this.takeAway, this.when);
+            order.setIdempotencyKey(this.idempotencyKey);
+            return order;
         }
     }
 
@@ -0,0 +1,73 @@
+package ch.hearc.ig.orderresto.business;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Price arithmetic on amounts in cents (centimes), held in primitive longs so that quoting and totaling orders
+ * allocates nothing. Amounts are converted from and to BigDecimal only where they are read from or written to
+ * the database, whose price and amount columns are number(9,2).
+ *
+ * Rules: every operation is exact, an overflow of a long throws an ArithmeticException instead of wrapping
+ * around; amounts with more than two decimals are rounded half up (half away from zero).
+ */
+public final class PricingEngine {
+
+    /**
+     * Largest amount a number(9,2) column can store, in cents.
+     */
+    public static final long MAX_STORABLE_CENTS = 999_999_999L;
+
+    private static final int CENTS_SCALE = 2;
+
+    private PricingEngine() {}
+
+    /**
+     * @param amount an amount, typically read from the database.
+     * @return the amount in cents, rounded half up to the cent.
+     * @throws ArithmeticException if the amount does not fit in a long number of cents.
+     */
+    public static long toCents(BigDecimal amount) {
+        return amount.setScale(CENTS_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * @param cents an amount in cents.
+     * @return the amount with two decimals, as stored in the database.
+     */
+    public static BigDecimal toAmount(long cents) {
+        return BigDecimal.valueOf(cents, CENTS_SCALE);
+    }
+
+    /**
+     * @param cents an amount in cents about to be written to a number(9,2) column.
+     * @return the amount, unchanged.
+     * @throws ArithmeticException if the column cannot store the amount.
+     */
+    public static long checkStorable(long cents) {
+        if (cents > MAX_STORABLE_CENTS || cents < -MAX_STORABLE_CENTS) {
+            throw new ArithmeticException("The amount of " + cents + " cents exceeds the capacity of a number(9,2) column");
+        }
+        return cents;
+    }
+
+    public static long add(long cents, long otherCents) {
+        return Math.addExact(cents, otherCents);
+    }
+
+    /**
+     * Totals a basket without allocating: the line of index i is quantities[i] times unitPricesCents[i].
+     *
+     * @param unitPricesCents the unit prices of the lines, in cents.
+     * @param quantities the quantities of the lines.
+     * @param lineCount the number of lines to total, from the first one.
+     * @return the total of the lines, in cents.
+     */
+    public static long quote(long[] unitPricesCents, int[] quantities, int lineCount) {
+        long total = 0;
+        for (int i = 0; i < lineCount; i++) {
+            total = Math.addExact(total, Math.multiplyExact(unitPricesCents[i], quantities[i]));
+        }
+        return total;
+    }
+}
@@ -1,28 +1,44 @@
 package ch.hearc.ig.orderresto.business;
 
+import ch.hearc.ig.orderresto.persistence.utils.CacheMetrics;
+import ch.hearc.ig.orderresto.persistence.utils.HibernateUtil;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.math.BigDecimal;
 import java.util.HashSet;
 import java.util.Set;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheMetrics.PRODUCT_REGION)
 @Table(
-        name = "PRODUIT"
+        name = "PRODUIT",
+        indexes = @Index(name = "IX_PRODUIT_RESTO", columnList = "FK_RESTO, NUMERO")
 )
 public class Product {
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "SEQ_PRODUIT")
+    @SequenceGenerator(name = "SEQ_PRODUIT", sequenceName = "SEQ_PRODUIT", allocationSize = HibernateUtil.ID_ALLOCATION_SIZE)
     @Column(name = "NUMERO")
     private Long id;
 
+    @Version
+    @Column(name = "VERSION", nullable = false)
+    private Long version;
+
     @Column(name = "NOM", nullable = false)
     private String name;
 
     @Column(name = "PRIX_UNITAIRE", nullable = false)
     private BigDecimal unitPrice;
 
+    // The unit price in cents, used by the totals of the orders (see PricingEngine)
+    @Transient
+    private long unitPriceCents;
+
     @Column(name = "DESCRIPTION", nullable = false)
     private String description;
 
@@ -39,6 +55,7 @@ public class Product {
         this.id = id;
         this.name = name;
         this.unitPrice = unitPrice;
+        this.unitPriceCents = PricingEngine.toCents(unitPrice);
         this.description = description;
         this.orders = new HashSet<>();
         this.restaurant = restaurant;
@@ -49,6 +66,10 @@ public class Product {
         return id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
     public String getName() {
         return name;
     }
@@ -57,6 +78,10 @@ public class Product {
         return unitPrice;
     }
 
+    public long getUnitPriceCents() {
+        return unitPriceCents;
+    }
+
     public String getDescription() {
         return description;
     }
@@ -73,12 +98,17 @@ public class Product {
         this.id = id;
     }
 
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public void setName(String name) {
         this.name = name;
     }
 
     public void setUnitPrice(BigDecimal unitPrice) {
         this.unitPrice = unitPrice;
+        this.unitPriceCents = PricingEngine.toCents(unitPrice);
     }
 
     public void setDescription(String description) {
@@ -93,6 +123,14 @@ public class Product {
         this.restaurant = restaurant;
     }
 
+    // The price is converted once per load or write, not on every total
+    @PostLoad
+    @PrePersist
+    @PreUpdate
+    private void cacheUnitPriceCents() {
+        this.unitPriceCents = PricingEngine.toCents(this.unitPrice);
+    }
+
     @Override
     public String toString() {
         return String.format(
@@ -104,10 +142,49 @@ public class Product {
         );
     }
 
+    /**
+     * Two products are equal if they have the same id, e.g. two copies of the same product of a menu, so that an
+     * order holds a product once however many times it was added. Products not yet stored are only equal to
+     * themselves. The hash code does not depend on the id, which is only assigned when the product is stored.
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Product)) {
+            return false;
+        }
+        Long otherId = ((Product) other).getId();
+        return this.getId() != null && this.getId().equals(otherId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Product.class.hashCode();
+    }
+
     public void addOrder(Order order) {
         this.orders.add(order);
     }
 
+    /**
+     * @return a copy of the product with the same id and version, not registered in its restaurant, so that it
+     * can be modified or merged without affecting the original.
+     */
+    Product copy() {
+        Product copy = new Product();
+        copy.id = this.id;
+        copy.version = this.version;
+        copy.name = this.name;
+        copy.unitPrice = this.unitPrice;
+        copy.unitPriceCents = this.unitPriceCents;
+        copy.description = this.description;
+        copy.orders = new HashSet<>();
+        copy.restaurant = this.restaurant;
+        return copy;
+    }
+
     public static class Builder {
         private Long id;
         private String name;
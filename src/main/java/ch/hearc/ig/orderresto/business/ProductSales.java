@@ -0,0 +1,30 @@
+package ch.hearc.ig.orderresto.business;
+
+/**
+ * Number of times a product was ordered over a period, as computed by the best sellers report.
+ */
+public class ProductSales {
+
+    private final Long productId;
+    private final String productName;
+    private final long quantity;
+
+    public ProductSales(Long productId, String productName, long quantity) {
+        this.productId = productId;
+        this.productName = productName;
+        this.quantity = quantity;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+
+}
@@ -1,21 +1,33 @@
 package ch.hearc.ig.orderresto.business;
 
+import ch.hearc.ig.orderresto.persistence.utils.CacheMetrics;
+import ch.hearc.ig.orderresto.persistence.utils.HibernateUtil;
 import jakarta.persistence.*;
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.util.HashSet;
 import java.util.Set;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheMetrics.RESTAURANT_REGION)
 @Table(
         name = "RESTAURANT"
 )
 public class Restaurant {
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "SEQ_RESTAURANT")
+    @SequenceGenerator(name = "SEQ_RESTAURANT", sequenceName = "SEQ_RESTAURANT", allocationSize = HibernateUtil.ID_ALLOCATION_SIZE)
     @Column(name = "NUMERO")
     private Long id;
 
+    @Version
+    @Column(name = "VERSION", nullable = false)
+    private Long version;
+
     @Column(name="NOM", nullable = false)
     private String name;
 
@@ -26,6 +38,7 @@ public class Restaurant {
     private Address address;
 
     @OneToMany(mappedBy = "restaurant")
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheMetrics.PRODUCTS_CATALOG_REGION)
     private Set<Product> productsCatalog;
 
     public Restaurant () {}
@@ -42,6 +55,10 @@ public class Restaurant {
         return id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
     public String getName() {
         return name;
     }
@@ -62,6 +79,10 @@ public class Restaurant {
         this.id = id;
     }
 
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public void setName(String name) {
         this.name = name;
     }
@@ -82,7 +103,11 @@ public class Restaurant {
         if (p.getRestaurant() != this) {
             throw new RuntimeException("Restaurant mismatch!");
         }
-        this.productsCatalog.add(p);
+        // The catalog of a restaurant loaded by a closed unit of work is not available, it is read again from
+        // the database (or the second-level cache) the next time it is needed
+        if (Hibernate.isInitialized(this.productsCatalog)) {
+            this.productsCatalog.add(p);
+        }
     }
 
     public void addOrder(Order order) {
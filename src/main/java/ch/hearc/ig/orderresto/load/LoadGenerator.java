@@ -0,0 +1,411 @@
+package ch.hearc.ig.orderresto.load;
+
+import ch.hearc.ig.orderresto.business.Customer;
+import ch.hearc.ig.orderresto.business.MenuSnapshot;
+import ch.hearc.ig.orderresto.business.Order;
+import ch.hearc.ig.orderresto.business.Product;
+import ch.hearc.ig.orderresto.business.Restaurant;
+import ch.hearc.ig.orderresto.service.CustomerService;
+import ch.hearc.ig.orderresto.service.MenuService;
+import ch.hearc.ig.orderresto.service.ProductOrderService;
+import ch.hearc.ig.orderresto.service.RequestEngine;
+import ch.hearc.ig.orderresto.service.RestaurantService;
+import ch.hearc.ig.orderresto.utils.Json;
+import ch.hearc.ig.orderresto.utils.LatencyHistogram;
+import ch.hearc.ig.orderresto.utils.SimpleLogger;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Drives a synthetic workload against the services, to reproduce a production load and measure its latencies.
+ * The operations are drawn from a weighted mix (see {@link Operation}) and started at a fixed rate, on a
+ * schedule that does not wait for the previous operations to complete (open loop): the latency of an operation
+ * is counted from the time it was scheduled, so that a stalled service shows in the latencies instead of slowing
+ * the load down (coordinated omission). The time spent in the service alone is recorded as well.
+ * The operations run through the {@link RequestEngine}, each in its own unit of work, like the requests of the API,
+ * and orders are placed in their own transaction, like POST /orders.
+ * The operations and their arguments are drawn from a seeded generator, so that a run with the same seed against
+ * the same data replays the same workload. The results are written to a JSON report.
+ *
+ * Settings, as system properties: "orderresto.load.rate" (operations per second, default 200),
+ * "orderresto.load.durationSeconds" (default 30), "orderresto.load.warmupSeconds" (not recorded, default 5),
+ * "orderresto.load.mix" (default "browse=80,order=15,history=5"), "orderresto.load.seed" (default random),
+ * "orderresto.load.maxInFlight" (operations running at once before new ones are rejected, default 1000) and
+ * "orderresto.load.report" (default "load-report.json").
+ */
+public class LoadGenerator {
+
+    /**
+     * The operations of the workload.
+     */
+    public enum Operation {
+        // Looks up a restaurant and reads its menu
+        BROWSE,
+        // Places an order of one to three products of a menu
+        ORDER,
+        // Reads the order history of a customer
+        HISTORY
+    }
+
+    private static final long COMPLETION_POLL_NANOS = 1_000_000;
+
+    private final double rate;
+    private final int durationSeconds;
+    private final int warmupSeconds;
+    private final Map<Operation, Integer> mix;
+    private final long seed;
+    private final int maxInFlight;
+    private final Path report;
+
+    private final RestaurantService restaurantService = RestaurantService.getInstance();
+    private final CustomerService customerService = CustomerService.getInstance();
+    private final MenuService menuService = MenuService.getInstance();
+    private final ProductOrderService productOrderService = ProductOrderService.getInstance();
+    private final RequestEngine requestEngine = RequestEngine.getInstance();
+
+    private final Map<Operation, OperationStats> statsByOperation = new EnumMap<>(Operation.class);
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final String runId = UUID.randomUUID().toString().substring(0, 8);
+
+    private List<Restaurant> restaurants;
+    private List<Customer> customers;
+
+    private LoadGenerator(Builder builder) {
+        this.rate = builder.rate;
+        this.durationSeconds = builder.durationSeconds;
+        this.warmupSeconds = builder.warmupSeconds;
+        this.mix = builder.mix;
+        this.seed = builder.seed;
+        this.maxInFlight = builder.maxInFlight;
+        this.report = builder.report;
+        for (Operation operation : Operation.values()) {
+            this.statsByOperation.put(operation, new OperationStats());
+        }
+    }
+
+    /**
+     * Runs the workload, waits for the operations to complete, then writes the report.
+     *
+     * @return true if the workload ran and the report was written.
+     */
+    public boolean run() {
+        this.restaurants = this.restaurantService.getAllRestaurants();
+        this.customers = this.customerService.getAllCustomers();
+        if (this.restaurants.isEmpty() || this.customers.isEmpty()) {
+            SimpleLogger.error("An error occured while trying to run the load: there are no restaurants or no customers");
+            return false;
+        }
+
+        SimpleLogger.info(String.format(Locale.ROOT, "Load started: %.0f operations/s for %d s after %d s of warmup, mix %s, seed %d",
+                this.rate, this.durationSeconds, this.warmupSeconds, this.mix, this.seed));
+
+        SplittableRandom random = new SplittableRandom(this.seed);
+        int totalWeight = this.mix.values().stream().mapToInt(Integer::intValue).sum();
+        long warmupOperations = (long) (this.rate * this.warmupSeconds);
+        long totalOperations = warmupOperations + (long) (this.rate * this.durationSeconds);
+        LocalDateTime startedAt = LocalDateTime.now();
+        long start = System.nanoTime();
+        long measureStart = start + (long) (warmupOperations * 1_000_000_000.0 / this.rate);
+
+        for (long i = 0; i < totalOperations; i++) {
+            // The schedule is fixed upfront, a late operation does not push the next ones back
+            long scheduledAt = start + (long) (i * 1_000_000_000.0 / this.rate);
+            long wait;
+            while ((wait = scheduledAt - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            Operation operation = pick(random.nextInt(totalWeight));
+            SplittableRandom operationRandom = random.split();
+            OperationStats stats = i < warmupOperations ? null : this.statsByOperation.get(operation);
+
+            if (this.inFlight.get() >= this.maxInFlight) {
+                if (stats != null) {
+                    stats.rejected.increment();
+                }
+                continue;
+            }
+            this.inFlight.incrementAndGet();
+            this.execute(operation, operationRandom, scheduledAt, stats);
+        }
+
+        // The operations still running are waited for
+        while (this.inFlight.get() > 0) {
+            LockSupport.parkNanos(COMPLETION_POLL_NANOS);
+        }
+
+        double measuredSeconds = (System.nanoTime() - measureStart) / 1_000_000_000.0;
+        SimpleLogger.info("Load completed, " + this.summary());
+        return this.writeReport(startedAt, measuredSeconds);
+    }
+
+    /**
+     * @return the latency of each operation, on one line, suitable for the logs.
+     */
+    public String summary() {
+        StringBuilder summary = new StringBuilder("latency");
+        this.statsByOperation.forEach((operation, stats) -> summary.append(" [").append(operation.name().toLowerCase(Locale.ROOT))
+                .append(' ').append(stats.latency.summary())
+                .append(" errors=").append(stats.errors.sum())
+                .append(" rejected=").append(stats.rejected.sum()).append(']'));
+        return summary.toString();
+    }
+
+    private Operation pick(int draw) {
+        for (Map.Entry<Operation, Integer> weight : this.mix.entrySet()) {
+            draw -= weight.getValue();
+            if (draw < 0) {
+                return weight.getKey();
+            }
+        }
+        throw new IllegalStateException("The mix has no operation");
+    }
+
+    // Runs through the request engine, in its own unit of work (an order in its own transaction) and within the
+    // limit of the engine like a request of the API. An operation the engine rejected is counted as rejected, one
+    // that failed as an error with its latency
+    private void execute(Operation operation, SplittableRandom random, long scheduledAt, OperationStats stats) {
+        AtomicLong startedAt = new AtomicLong();
+        Supplier<Boolean> request = () -> {
+            startedAt.set(System.nanoTime());
+            return switch (operation) {
+                case BROWSE -> this.browse(random);
+                case ORDER -> this.order(random);
+                case HISTORY -> this.history(random);
+            };
+        };
+
+        CompletableFuture<Boolean> result = operation == Operation.ORDER
+                ? this.requestEngine.submitStandalone(request)
+                : this.requestEngine.submit(request);
+
+        result.whenComplete((succeeded, failure) -> {
+            try {
+                if (stats == null) {
+                    return;
+                }
+                if (failure instanceof RejectedExecutionException) {
+                    stats.rejected.increment();
+                    return;
+                }
+                long end = System.nanoTime();
+                stats.latency.record(end - scheduledAt);
+                stats.serviceTime.record(end - startedAt.get());
+                if (failure != null || !succeeded) {
+                    stats.errors.increment();
+                }
+            } finally {
+                // Decremented last, the report is written once all the operations are recorded
+                this.inFlight.decrementAndGet();
+            }
+        });
+    }
+
+    private boolean browse(SplittableRandom random) {
+        Long restaurantId = this.restaurants.get(random.nextInt(this.restaurants.size())).getId();
+        return this.restaurantService.getRestaurantById(restaurantId)
+                .flatMap(this.menuService::getMenu)
+                .isPresent();
+    }
+
+    private boolean order(SplittableRandom random) {
+        Customer customer = this.customers.get(random.nextInt(this.customers.size()));
+        Restaurant restaurant = this.restaurants.get(random.nextInt(this.restaurants.size()));
+        MenuSnapshot menu = this.menuService.getMenu(restaurant).orElse(null);
+        if (menu == null || menu.size() == 0) {
+            return false;
+        }
+
+        // The key is unique to the run, so that a replay against the same data places new orders
+        Order order = new Order.Builder()
+                .withCustomer(customer)
+                .withRestaurant(restaurant)
+                .withTakeAway(random.nextBoolean())
+                .withWhen(LocalDateTime.now())
+                .withIdempotencyKey("load-" + this.runId + "-" + Long.toHexString(random.nextLong()))
+                .build();
+        // A product drawn twice is a single line of the order
+        Map<Integer, Product> orderedProducts = new HashMap<>();
+        int products = 1 + random.nextInt(3);
+        for (int i = 0; i < products; i++) {
+            order.addProduct(orderedProducts.computeIfAbsent(random.nextInt(menu.size()), menu::getProduct));
+        }
+        return this.productOrderService.placeOrder(order) != null;
+    }
+
+    // The history may be empty, only a failure to read it is an error
+    private boolean history(SplittableRandom random) {
+        Customer customer = this.customers.get(random.nextInt(this.customers.size()));
+        this.productOrderService.findOrderHistory(customer);
+        return true;
+    }
+
+    private boolean writeReport(LocalDateTime startedAt, double measuredSeconds) {
+        Map<String, Object> mix = new LinkedHashMap<>();
+        this.mix.forEach((operation, weight) -> mix.put(operation.name().toLowerCase(Locale.ROOT), weight));
+
+        Map<String, Object> operations = new LinkedHashMap<>();
+        this.statsByOperation.forEach((operation, stats) -> {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("count", stats.latency.getCount());
+            json.put("errors", stats.errors.sum());
+            json.put("rejected", stats.rejected.sum());
+            json.put("throughput", round(stats.latency.getCount() / measuredSeconds));
+            json.put("latencyMillis", toJson(stats.latency));
+            json.put("serviceTimeMillis", toJson(stats.serviceTime));
+            operations.put(operation.name().toLowerCase(Locale.ROOT), json);
+        });
+
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("startedAt", startedAt.toString());
+        json.put("seed", this.seed);
+        json.put("targetRate", this.rate);
+        json.put("durationSeconds", this.durationSeconds);
+        json.put("warmupSeconds", this.warmupSeconds);
+        json.put("maxInFlight", this.maxInFlight);
+        json.put("mix", mix);
+        json.put("measuredSeconds", round(measuredSeconds));
+        json.put("operations", operations);
+
+        try {
+            Files.writeString(this.report, Json.write(json) + System.lineSeparator(), StandardCharsets.UTF_8);
+            SimpleLogger.info("Load report written to " + this.report.toAbsolutePath());
+            return true;
+        } catch (IOException e) {
+            SimpleLogger.error("An error occured while trying to write the load report " + this.report + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static Map<String, Object> toJson(LatencyHistogram histogram) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("mean", round(histogram.getMeanMillis()));
+        json.put("p50", round(histogram.getPercentileMillis(50)));
+        json.put("p90", round(histogram.getPercentileMillis(90)));
+        json.put("p99", round(histogram.getPercentileMillis(99)));
+        json.put("p99.9", round(histogram.getPercentileMillis(99.9)));
+        json.put("max", round(histogram.getMaxMillis()));
+        return json;
+    }
+
+    private static BigDecimal round(double value) {
+        return BigDecimal.valueOf(value).setScale(3, RoundingMode.HALF_UP);
+    }
+
+    private static class OperationStats {
+
+        // From the scheduled start of the operation, including the time it waited to start
+        private final LatencyHistogram latency = new LatencyHistogram();
+        // From the actual start of the operation
+        private final LatencyHistogram serviceTime = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        // Not started, too many operations were running or the request engine had no permit in time
+        private final LongAdder rejected = new LongAdder();
+    }
+
+    public static class Builder {
+        private double rate = Double.parseDouble(System.getProperty("orderresto.load.rate", "200"));
+        private int durationSeconds = Integer.getInteger("orderresto.load.durationSeconds", 30);
+        private int warmupSeconds = Integer.getInteger("orderresto.load.warmupSeconds", 5);
+        private Map<Operation, Integer> mix = parseMix(System.getProperty("orderresto.load.mix", "browse=80,order=15,history=5"));
+        private long seed = Long.getLong("orderresto.load.seed", System.nanoTime());
+        private int maxInFlight = Integer.getInteger("orderresto.load.maxInFlight", 1_000);
+        private Path report = Path.of(System.getProperty("orderresto.load.report", "load-report.json"));
+
+        /**
+         * @param rate the operations started per second.
+         */
+        public Builder withRate(double rate) {
+            this.rate = rate;
+            return this;
+        }
+
+        public Builder withDurationSeconds(int durationSeconds) {
+            this.durationSeconds = durationSeconds;
+            return this;
+        }
+
+        public Builder withWarmupSeconds(int warmupSeconds) {
+            this.warmupSeconds = warmupSeconds;
+            return this;
+        }
+
+        /**
+         * @param mix the weight of each operation, e.g. "browse=80,order=15,history=5".
+         */
+        public Builder withMix(String mix) {
+            this.mix = parseMix(mix);
+            return this;
+        }
+
+        /**
+         * @param seed the seed of the workload, the same seed replays the same operations.
+         */
+        public Builder withSeed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public Builder withMaxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        public Builder withReport(Path report) {
+            this.report = report;
+            return this;
+        }
+
+        public LoadGenerator build() {
+            if (this.rate <= 0 || this.durationSeconds <= 0 || this.warmupSeconds < 0 || this.maxInFlight <= 0) {
+                throw new IllegalArgumentException("The rate, the duration and the operations in flight must be positive");
+            }
+            return new LoadGenerator(this);
+        }
+
+        private static Map<Operation, Integer> parseMix(String mix) {
+            Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+            for (String entry : mix.split(",")) {
+                String[] fields = entry.strip().split("=");
+                int weight;
+                Operation operation;
+                try {
+                    operation = Operation.valueOf(fields[0].strip().toUpperCase(Locale.ROOT));
+                    weight = fields.length == 2 ? Integer.parseInt(fields[1].strip()) : -1;
+                } catch (IllegalArgumentException e) {
+                    weight = -1;
+                    operation = null;
+                }
+                if (weight < 0) {
+                    throw new IllegalArgumentException("Invalid weight in the mix: " + entry);
+                }
+                weights.put(operation, weight);
+            }
+            if (weights.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+                throw new IllegalArgumentException("The mix has no operation");
+            }
+            return weights;
+        }
+    }
+}
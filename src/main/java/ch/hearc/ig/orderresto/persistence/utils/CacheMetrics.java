@@ -0,0 +1,73 @@
+package ch.hearc.ig.orderresto.persistence.utils;
+
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+
+/**
+ * Names of the second-level cache regions, as configured in ehcache.xml, and access to their hit/miss counters.
+ * The counters come from Hibernate's statistics, which {@link HibernateUtil} enables along with the cache.
+ */
+public class CacheMetrics {
+
+    public static final String RESTAURANT_REGION = "restaurant";
+    public static final String PRODUCT_REGION = "product";
+    public static final String PRODUCTS_CATALOG_REGION = "restaurant.productsCatalog";
+    public static final String CUSTOMER_REGION = "customer";
+
+    private static final String[] CATALOG_REGIONS = { RESTAURANT_REGION, PRODUCT_REGION, PRODUCTS_CATALOG_REGION };
+
+    private CacheMetrics() {}
+
+    public static long getHitCount(String region) {
+        CacheRegionStatistics statistics = getRegionStatistics(region);
+        return statistics == null ? 0 : statistics.getHitCount();
+    }
+
+    public static long getMissCount(String region) {
+        CacheRegionStatistics statistics = getRegionStatistics(region);
+        return statistics == null ? 0 : statistics.getMissCount();
+    }
+
+    public static long getPutCount(String region) {
+        CacheRegionStatistics statistics = getRegionStatistics(region);
+        return statistics == null ? 0 : statistics.getPutCount();
+    }
+
+    /**
+     * @return the hits of the catalog regions divided by all their lookups, 0 if nothing was looked up yet.
+     */
+    public static double getCatalogHitRatio() {
+        long hits = 0;
+        long lookups = 0;
+        for (String region : CATALOG_REGIONS) {
+            hits += getHitCount(region);
+            lookups += getHitCount(region) + getMissCount(region);
+        }
+        return lookups == 0 ? 0 : hits / (double) lookups;
+    }
+
+    /**
+     * Resets all of Hibernate's statistics, typically between two load test runs.
+     */
+    public static void reset() {
+        HibernateUtil.getStatistics().clear();
+    }
+
+    /**
+     * @return a one line summary of the catalog and customer regions and of the query cache, suitable for the logs.
+     */
+    public static String summary() {
+        Statistics statistics = HibernateUtil.getStatistics();
+        StringBuilder summary = new StringBuilder("cache");
+        for (String region : CATALOG_REGIONS) {
+            summary.append(String.format(" %s(hit=%d miss=%d put=%d)", region, getHitCount(region), getMissCount(region), getPutCount(region)));
+        }
+        summary.append(String.format(" %s(hit=%d miss=%d put=%d)", CUSTOMER_REGION, getHitCount(CUSTOMER_REGION), getMissCount(CUSTOMER_REGION), getPutCount(CUSTOMER_REGION)));
+        summary.append(String.format(" queries(hit=%d miss=%d)", statistics.getQueryCacheHitCount(), statistics.getQueryCacheMissCount()));
+        return summary.toString();
+    }
+
+    private static CacheRegionStatistics getRegionStatistics(String region) {
+        return HibernateUtil.getStatistics().getDomainDataRegionStatistics(region);
+    }
+}
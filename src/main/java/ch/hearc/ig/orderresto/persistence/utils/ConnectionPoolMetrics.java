@@ -0,0 +1,140 @@
+package ch.hearc.ig.orderresto.persistence.utils;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects live counters of the HikariCP connection pool used behind {@link HibernateUtil}.
+ * HikariCP instantiates this factory by its class name (see the "hibernate.hikari.metricsTrackerFactory" property)
+ * and reports every connection acquisition to it, the counters are therefore kept in static fields
+ * so they can be read from anywhere during load tests.
+ */
+public class ConnectionPoolMetrics implements MetricsTrackerFactory {
+
+    private static volatile PoolStats poolStats;
+
+    private static final LongAdder acquiredCount = new LongAdder();
+    private static final LongAdder acquiredNanos = new LongAdder();
+    private static final AtomicLong maxAcquiredNanos = new AtomicLong();
+    private static final LongAdder timeoutCount = new LongAdder();
+    private static final LongAdder createdCount = new LongAdder();
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats stats) {
+        poolStats = stats;
+        return new Tracker();
+    }
+
+    /**
+     * @return the number of connections currently borrowed from the pool.
+     */
+    public static int getActiveConnections() {
+        PoolStats stats = poolStats;
+        return stats == null ? 0 : stats.getActiveConnections();
+    }
+
+    /**
+     * @return the number of connections waiting in the pool to be borrowed.
+     */
+    public static int getIdleConnections() {
+        PoolStats stats = poolStats;
+        return stats == null ? 0 : stats.getIdleConnections();
+    }
+
+    /**
+     * @return the number of threads currently blocked while waiting for a connection.
+     */
+    public static int getWaitingThreads() {
+        PoolStats stats = poolStats;
+        return stats == null ? 0 : stats.getPendingThreads();
+    }
+
+    /**
+     * @return the total number of physical connections opened by the pool.
+     */
+    public static int getTotalConnections() {
+        PoolStats stats = poolStats;
+        return stats == null ? 0 : stats.getTotalConnections();
+    }
+
+    public static long getAcquiredCount() {
+        return acquiredCount.sum();
+    }
+
+    public static long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    public static long getCreatedCount() {
+        return createdCount.sum();
+    }
+
+    /**
+     * @return the mean time spent waiting for a connection, in microseconds.
+     */
+    public static double getMeanAcquireMicros() {
+        long count = acquiredCount.sum();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(acquiredNanos.sum()) / (double) count;
+    }
+
+    /**
+     * @return the longest time spent waiting for a connection, in microseconds.
+     */
+    public static long getMaxAcquireMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxAcquiredNanos.get());
+    }
+
+    /**
+     * Resets the acquisition counters, typically between two load test runs.
+     * The connection gauges (active, idle, waiting) are live values and are not affected.
+     */
+    public static void reset() {
+        acquiredCount.reset();
+        acquiredNanos.reset();
+        maxAcquiredNanos.set(0);
+        timeoutCount.reset();
+        createdCount.reset();
+    }
+
+    /**
+     * @return a one line summary of the pool state, suitable for the logs.
+     */
+    public static String summary() {
+        return String.format(
+                "pool active=%d idle=%d waiting=%d total=%d acquired=%d timeouts=%d acquire(mean=%.1fus max=%dus)",
+                getActiveConnections(),
+                getIdleConnections(),
+                getWaitingThreads(),
+                getTotalConnections(),
+                getAcquiredCount(),
+                getTimeoutCount(),
+                getMeanAcquireMicros(),
+                getMaxAcquireMicros()
+        );
+    }
+
+    private static class Tracker implements IMetricsTracker {
+
+        @Override
+        public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+            createdCount.increment();
+        }
+
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            acquiredCount.increment();
+            acquiredNanos.add(elapsedAcquiredNanos);
+            maxAcquiredNanos.accumulateAndGet(elapsedAcquiredNanos, Math::max);
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            timeoutCount.increment();
+        }
+    }
+}
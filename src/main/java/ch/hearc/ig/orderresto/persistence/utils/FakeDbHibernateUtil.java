@@ -29,7 +29,7 @@ public class FakeDbHibernateUtil {
     }
 
     private boolean isDatabaseEmpty() {
-        return restaurantService.getAllRestaurants().isEmpty() && customerService.getAllCustomers().isEmpty();
+        return restaurantService.getRestaurantsPage(null, 1).isEmpty() && customerService.getCustomersPage(null, 1).isEmpty();
     }
 
     private void populateCustomer() {
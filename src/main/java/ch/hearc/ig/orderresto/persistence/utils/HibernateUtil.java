@@ -3,34 +3,286 @@ package ch.hearc.ig.orderresto.persistence.utils;
 import ch.hearc.ig.orderresto.utils.SimpleLogger;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.OptimisticLockException;
 import jakarta.persistence.Persistence;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.SessionFactory;
+import org.hibernate.StaleStateException;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.query.Query;
+import org.hibernate.stat.Statistics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 /**
  * Utility class for managing Hibernate's EntityManagerFactory and EntityManager.
- * Provides thread-local EntityManager instances and handles resource cleanup.
+ * Every operation runs in its own {@link UnitOfWork}: the persistence context is opened, flushed, cleared
+ * and closed around it, so loaded entities do not pile up on long-lived threads.
+ * Connections are served by a HikariCP pool, its sizing is read from the "hibernate.hikari.*" properties
+ * of persistence.xml and can be overridden with system properties (e.g. -Dhibernate.hikari.maximumPoolSize=20).
+ * The catalog entities are kept in a JCache (Ehcache) second-level cache configured by ehcache.xml.
  */
 public class HibernateUtil {
 
-    private static final EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory("ch.hearc.ig.orderresto");
+    private static final String PERSISTENCE_UNIT_NAME = "ch.hearc.ig.orderresto";
+
+    // Identifiers reserved per sequence call, the INCREMENT BY of the SEQ_* sequences must match it
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    // Rows fetched per JDBC round-trip when streaming query results
+    public static final int DEFAULT_FETCH_SIZE = 500;
+
+    // Statements sent per JDBC batch, unless overridden with -Dhibernate.jdbc.batch_size
+    private static final int DEFAULT_JDBC_BATCH_SIZE = 50;
+
+    // Attempts made by inTransactionWithRetry before giving up on an optimistic lock conflict
+    public static final int OPTIMISTIC_LOCK_MAX_ATTEMPTS = 3;
+
+    private static final EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT_NAME, buildOverrides());
+
+    /**
+     * Builds the settings that complete or override the ones of persistence.xml.
+     * The connection provider is always the HikariCP pool, reporting to {@link ConnectionPoolMetrics}, and the
+     * second-level cache is always enabled, reporting to {@link CacheMetrics}.
+     * Any "hibernate.*" or "jakarta.persistence.*" system property is applied on top, so a load test can tune
+     * the pool without editing persistence.xml.
+     *
+     * @return the properties given to the persistence provider.
+     */
+    private static Map<String, Object> buildOverrides() {
+        Map<String, Object> overrides = new HashMap<>();
+
+        overrides.put("hibernate.connection.provider_class", "org.hibernate.hikaricp.internal.HikariCPConnectionProvider");
+        overrides.put("hibernate.hikari.poolName", "orderresto");
+        overrides.put("hibernate.hikari.metricsTrackerFactory", ConnectionPoolMetrics.class.getName());
+
+        overrides.put("jakarta.persistence.sharedCache.mode", "ENABLE_SELECTIVE");
+        overrides.put("hibernate.cache.use_second_level_cache", "true");
+        overrides.put("hibernate.cache.use_query_cache", "true");
+        overrides.put("hibernate.cache.region.factory_class", "jcache");
+        overrides.put("hibernate.javax.cache.provider", "org.ehcache.jsr107.EhcacheCachingProvider");
+        overrides.put("hibernate.javax.cache.uri", "ehcache.xml");
+        // Writing the owning side of a cached inverse collection (Product.restaurant) evicts that collection
+        overrides.put("hibernate.cache.auto_evict_collection_cache", "true");
+        overrides.put("hibernate.generate_statistics", "true");
+
+        // Group the inserts and updates by table so that they can be sent in JDBC batches
+        overrides.put("hibernate.jdbc.batch_size", String.valueOf(DEFAULT_JDBC_BATCH_SIZE));
+        overrides.put("hibernate.order_inserts", "true");
+        overrides.put("hibernate.order_updates", "true");
+        overrides.put("hibernate.jdbc.batch_versioned_data", "true");
+
+        System.getProperties().forEach((key, value) -> {
+            String name = key.toString();
+            if (name.startsWith("hibernate.") || name.startsWith("jakarta.persistence.")) {
+                overrides.put(name, value);
+            }
+        });
+
+        return overrides;
+    }
+
+    /**
+     * Opens a unit of work, to be used with try-with-resources. If a unit of work is already active on the
+     * current thread, the new one joins it.
+     *
+     * @return the unit of work, the caller must commit and close it.
+     */
+    public static UnitOfWork openUnitOfWork() {
+        return UnitOfWork.open(entityManagerFactory);
+    }
+
+    /**
+     * Runs the given work in a transaction and returns its result. The transaction is committed when the work
+     * completes and rolled back if it throws, the exception being propagated to the caller.
+     *
+     * @param work the work to run with the EntityManager of the unit of work.
+     * @return the result of the work.
+     */
+    public static <T> T inTransaction(Function<EntityManager, T> work) {
+        try (UnitOfWork unitOfWork = openUnitOfWork()) {
+            T result = work.apply(unitOfWork.getEntityManager());
+            unitOfWork.commit();
+            return result;
+        }
+    }
 
-    // Thread-local EntityManager, it will ensure that only one instance is used per thread
-    private static final ThreadLocal<EntityManager> entityManagerThreadLocal = ThreadLocal.withInitial(() -> entityManagerFactory.createEntityManager());
+    /**
+     * Runs the given work in a transaction, see {@link #inTransaction(Function)}.
+     *
+     * @param work the work to run with the EntityManager of the unit of work.
+     */
+    public static void runInTransaction(Consumer<EntityManager> work) {
+        inTransaction(entityManager -> {
+            work.accept(entityManager);
+            return null;
+        });
+    }
 
     /**
-     * Provides the thread-local EntityManager instance.
+     * Runs the given work in a transaction, see {@link #inTransaction(Function)}, and runs it again in a new
+     * transaction when it fails on an optimistic lock conflict, up to {@link #OPTIMISTIC_LOCK_MAX_ATTEMPTS} times.
+     * The work must therefore be idempotent and read the entities it updates itself, rather than merge detached
+     * ones whose version would stay outdated. Inside an enclosing unit of work, the transaction cannot be replayed
+     * and the work runs only once.
      *
-     * @return EntityManager for the current thread.
+     * @param work the work to run with the EntityManager of the unit of work.
+     * @return the result of the first attempt that committed.
+     */
+    public static <T> T inTransactionWithRetry(Function<EntityManager, T> work) {
+        if (UnitOfWork.isActive()) {
+            return inTransaction(work);
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return inTransaction(work);
+            } catch (RuntimeException e) {
+                if (attempt >= OPTIMISTIC_LOCK_MAX_ATTEMPTS || !isOptimisticLockFailure(e)) {
+                    throw e;
+                }
+                SimpleLogger.warning("Optimistic lock conflict, retrying (attempt " + attempt + " of " + OPTIMISTIC_LOCK_MAX_ATTEMPTS + ")");
+                backOff(attempt);
+            }
+        }
+    }
+
+    /**
+     * Runs an action once the current transaction is committed, e.g. to announce what it wrote, or right away
+     * outside of a unit of work. The action does not run if the transaction is rolled back.
+     *
+     * @param action the action to run after commit.
+     */
+    public static void afterCommit(Runnable action) {
+        UnitOfWork.afterCommit(action);
+    }
+
+    /**
+     * @return true if a unit of work is active on the current thread: the units of work opened now join it, and
+     * what they write is only committed with it.
+     */
+    public static boolean isInUnitOfWork() {
+        return UnitOfWork.isActive();
+    }
+
+    /**
+     * @param e an exception thrown by a unit of work.
+     * @return true if it, or one of its causes, reports an update based on an outdated version of an entity.
+     */
+    public static boolean isOptimisticLockFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof OptimisticLockException || cause instanceof StaleStateException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Waits a short random time, so that the conflicting transactions do not collide again right away
+    private static void backOff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(1, 10L * attempt + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to retry a transaction", e);
+        }
+    }
+
+    /**
+     * Reloads from the database the entities of a type that the persistence context already holds. A bulk update
+     * changes the rows behind the back of the persistence context, the entities it loaded before (in an enclosing
+     * unit of work) must be refreshed to see the change.
+     *
+     * @param entityManager the EntityManager of the unit of work.
+     * @param type the type of the entities to refresh.
+     * @param filter selects the entities affected by the bulk update.
+     */
+    public static <T> void refreshManaged(EntityManager entityManager, Class<T> type, Predicate<T> filter) {
+        for (Map.Entry<Object, EntityEntry> entry : entityManager.unwrap(SessionImplementor.class).getPersistenceContextInternal().reentrantSafeEntityEntries()) {
+            Object entity = entry.getKey();
+            if (type.isInstance(entity) && filter.test(type.cast(entity))) {
+                entityManager.refresh(entity);
+            }
+        }
+    }
+
+    /**
+     * Streams the results of a query through a forward-only cursor, in a unit of work that stays open until the
+     * stream is closed. Each entity is detached from the persistence context as it is handed to the stream, so
+     * memory use does not depend on the number of rows. The caller must close the stream (try-with-resources).
+     * The unit of work of the stream is its own and is not bound to the thread: the service calls made while
+     * consuming the stream run in their own units of work (or the caller's), rather than joining the read.
+     *
+     * @param queryFactory creates the query with the EntityManager of the unit of work.
+     * @param fetchSize the number of rows fetched per JDBC round-trip.
+     * @return the stream of detached entities.
+     */
+    public static <T> Stream<T> streamDetached(Function<EntityManager, TypedQuery<T>> queryFactory, int fetchSize) {
+        UnitOfWork unitOfWork = UnitOfWork.openNew(entityManagerFactory);
+
+        try {
+            EntityManager entityManager = unitOfWork.getEntityManager();
+
+            @SuppressWarnings("unchecked")
+            Query<T> query = queryFactory.apply(entityManager).unwrap(Query.class);
+
+            Stream<T> stream = query.setFetchSize(fetchSize)
+                    .setReadOnly(true)
+                    .stream()
+                    .map(entity -> {
+                        entityManager.detach(entity);
+                        return entity;
+                    })
+                    .onClose(() -> {
+                        try {
+                            unitOfWork.commit();
+                        } finally {
+                            unitOfWork.close();
+                        }
+                    });
+
+            unitOfWork.unbind();
+            return stream;
+        } catch (RuntimeException e) {
+            unitOfWork.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the JDBC batch size ("hibernate.jdbc.batch_size"), which bulk operations also use as the number of
+     * entities written between two flushes of the persistence context.
+     */
+    public static int getJdbcBatchSize() {
+        return Integer.parseInt(entityManagerFactory.getProperties().get("hibernate.jdbc.batch_size").toString());
+    }
+
+    /**
+     * @return Hibernate's statistics, among which the second-level cache hits and misses.
      */
-    public static EntityManager getEntityManager() {
-        return entityManagerThreadLocal.get();
+    public static Statistics getStatistics() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
     }
 
     /**
-     * Shuts down the EntityManagerFactory and releases resources.
+     * Shuts down the EntityManagerFactory and releases resources, the connection pool included.
+     * Units of work that are still open at this point are reported as leaks.
      */
     public static void shutdown() {
         if (entityManagerFactory != null) {
-            SimpleLogger.info("Closing EntityManagerFactory");
+            int openScopes = UnitOfWork.reportOpenScopes();
+            if (openScopes > 0) {
+                SimpleLogger.warning(openScopes + " unit(s) of work were never closed");
+            }
+            SimpleLogger.info("Closing EntityManagerFactory, " + ConnectionPoolMetrics.summary() + ", " + CacheMetrics.summary()
+                    + ", optimistic lock failures=" + getStatistics().getOptimisticFailureCount());
             entityManagerFactory.close();
         }
     }
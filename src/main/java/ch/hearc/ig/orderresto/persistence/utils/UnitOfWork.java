@@ -0,0 +1,318 @@
+package ch.hearc.ig.orderresto.persistence.utils;
+
+import ch.hearc.ig.orderresto.utils.SimpleLogger;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+
+import java.lang.ref.Cleaner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A scoped persistence context: an EntityManager and its transaction, opened for one operation and
+ * flushed, cleared and closed when the scope ends. Scopes are meant to be used with try-with-resources:
+ *
+ * <pre>
+ * try (UnitOfWork unitOfWork = HibernateUtil.openUnitOfWork()) {
+ *     unitOfWork.getEntityManager().persist(order);
+ *     unitOfWork.commit();
+ * }
+ * </pre>
+ *
+ * A scope opened while another one is active on the same thread joins it: it shares the EntityManager and
+ * the transaction, and only the outermost scope commits. Closing a scope without committing it rolls the
+ * transaction back. A scope opened with {@link #openNew(EntityManagerFactory)} does not join: it suspends the
+ * active scope until it is closed, or until it is unbound from the thread (see {@link #unbind()}).
+ * Actions can be registered to run once the transaction is committed (see {@link #afterCommit(Runnable)}).
+ * Scopes that are never closed are reported: when their handle is garbage collected, when the thread opens
+ * a new scope, and when the application shuts down.
+ * Set the system property "orderresto.leakDetection" to true to also log where leaked scopes were opened.
+ */
+public class UnitOfWork implements AutoCloseable {
+
+    private static final boolean TRACK_OPENING_SITE = Boolean.getBoolean("orderresto.leakDetection");
+
+    private static final Cleaner cleaner = Cleaner.create();
+
+    private static final ThreadLocal<Context> currentContext = new ThreadLocal<>();
+
+    // Root contexts that have been opened and not closed yet, across all threads
+    private static final Set<Context> openContexts = ConcurrentHashMap.newKeySet();
+
+    private final Context context;
+    private final HandleState state;
+    private final Cleaner.Cleanable cleanable;
+    private final boolean root;
+
+    private UnitOfWork(Context context, boolean root) {
+        this.context = context;
+        this.root = root;
+        this.state = new HandleState(context, root);
+        this.cleanable = cleaner.register(this, this.state);
+    }
+
+    /**
+     * Opens a new scope, or joins the scope already active on the current thread.
+     *
+     * @param entityManagerFactory the factory used to create the EntityManager of a new scope.
+     * @return the scope, to be closed by the caller.
+     */
+    static UnitOfWork open(EntityManagerFactory entityManagerFactory) {
+        Context context = currentContext.get();
+
+        if (context != null && context.leaked) {
+            SimpleLogger.warning("Discarding a leaked unit of work " + context.describe());
+            context.discard();
+            context = null;
+        }
+
+        if (context != null) {
+            return new UnitOfWork(context, false);
+        }
+
+        return openRoot(entityManagerFactory, null);
+    }
+
+    /**
+     * Opens a new scope with a transaction of its own, even if a scope is already active on the current thread.
+     * The active scope is suspended, and active again once the new scope is closed or unbound.
+     *
+     * @param entityManagerFactory the factory used to create the EntityManager of the new scope.
+     * @return the scope, to be closed by the caller.
+     */
+    static UnitOfWork openNew(EntityManagerFactory entityManagerFactory) {
+        Context context = currentContext.get();
+        return openRoot(entityManagerFactory, context == null || context.leaked ? null : context);
+    }
+
+    private static UnitOfWork openRoot(EntityManagerFactory entityManagerFactory, Context suspended) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        Context context = new Context(entityManager, suspended);
+        context.transaction.begin();
+
+        currentContext.set(context);
+        openContexts.add(context);
+
+        return new UnitOfWork(context, true);
+    }
+
+    /**
+     * @return true if a scope is active on the current thread, a new scope would join it.
+     */
+    static boolean isActive() {
+        Context context = currentContext.get();
+        return context != null && !context.leaked;
+    }
+
+    /**
+     * Registers an action to run once the transaction of the scope active on the current thread is committed and
+     * the scope closed, or runs it right away if no scope is active. The action is dropped if the transaction is
+     * rolled back.
+     *
+     * @param action the action, it may open a unit of work of its own.
+     */
+    static void afterCommit(Runnable action) {
+        if (!isActive()) {
+            action.run();
+            return;
+        }
+        currentContext.get().afterCommitActions.add(action);
+    }
+
+    /**
+     * Logs the scopes that are still open, typically when the application shuts down.
+     *
+     * @return the number of open scopes.
+     */
+    static int reportOpenScopes() {
+        for (Context context : openContexts) {
+            SimpleLogger.warning("Unit of work still open " + context.describe());
+        }
+        return openContexts.size();
+    }
+
+    public EntityManager getEntityManager() {
+        this.checkUsable();
+        return this.context.entityManager;
+    }
+
+    /**
+     * @return true if this scope owns the transaction, false if it joined an enclosing scope.
+     */
+    public boolean isRoot() {
+        return this.root;
+    }
+
+    /**
+     * Commits the transaction if this is the outermost scope. A joined scope leaves the commit to the
+     * scope that opened the transaction.
+     */
+    public void commit() {
+        this.checkUsable();
+        this.state.committed = true;
+
+        if (this.root) {
+            if (this.context.rollbackOnly) {
+                throw new IllegalStateException("Unit of work was marked for rollback by a nested scope");
+            }
+            this.context.transaction.commit();
+            this.context.committed = true;
+        }
+    }
+
+    /**
+     * Detaches this outermost scope from the current thread, which gets back the scope it suspended, if any: the
+     * units of work opened afterwards on the thread no longer join it. The scope remains usable through this
+     * handle until it is closed, e.g. by a stream still reading from it.
+     */
+    void unbind() {
+        this.checkUsable();
+        if (this.root) {
+            this.context.unbind();
+        }
+    }
+
+    /**
+     * Marks the transaction so that it will be rolled back by the outermost scope.
+     */
+    public void setRollbackOnly() {
+        this.checkUsable();
+        this.context.rollbackOnly = true;
+    }
+
+    /**
+     * Ends the scope. An uncommitted scope rolls back the transaction, or marks it for rollback if it was
+     * joined. The outermost scope clears and closes the EntityManager.
+     */
+    @Override
+    public void close() {
+        if (this.state.closed) {
+            return;
+        }
+        if (this.context.owner != Thread.currentThread()) {
+            throw new IllegalStateException("Unit of work opened by " + this.context.owner.getName() + " closed by another thread");
+        }
+        this.state.closed = true;
+        this.cleanable.clean();
+
+        if (!this.state.committed) {
+            this.context.rollbackOnly = true;
+        }
+
+        if (this.root) {
+            this.context.discard();
+            // Run once the scope is gone, so that the actions can neither join nor alter the committed transaction
+            this.context.runAfterCommitActions();
+        }
+    }
+
+    private void checkUsable() {
+        if (this.state.closed) {
+            throw new IllegalStateException("Unit of work is already closed");
+        }
+    }
+
+    /**
+     * State shared by the scopes of one thread, owned by the outermost scope.
+     */
+    private static class Context {
+
+        private final EntityManager entityManager;
+        private final EntityTransaction transaction;
+        private final Thread owner;
+        private final Throwable openingSite;
+        private final List<Runnable> afterCommitActions = new ArrayList<>();
+        // Scope active on the thread when this one was opened with openNew, active again once this one is gone
+        private final Context suspended;
+        private boolean rollbackOnly;
+        private boolean committed;
+        private volatile boolean leaked;
+
+        private Context(EntityManager entityManager, Context suspended) {
+            this.entityManager = entityManager;
+            this.suspended = suspended;
+            this.transaction = entityManager.getTransaction();
+            this.owner = Thread.currentThread();
+            this.openingSite = TRACK_OPENING_SITE ? new Throwable("Unit of work opened here") : null;
+        }
+
+        private void discard() {
+            try {
+                if (this.transaction.isActive()) {
+                    this.transaction.rollback();
+                }
+            } finally {
+                this.entityManager.clear();
+                this.entityManager.close();
+                openContexts.remove(this);
+                this.unbind();
+            }
+        }
+
+        private void unbind() {
+            if (currentContext.get() != this) {
+                return;
+            }
+            if (this.suspended != null) {
+                currentContext.set(this.suspended);
+            } else {
+                currentContext.remove();
+            }
+        }
+
+        private void runAfterCommitActions() {
+            if (!this.committed) {
+                return;
+            }
+            for (Runnable action : this.afterCommitActions) {
+                try {
+                    action.run();
+                } catch (Exception e) {
+                    SimpleLogger.error("An error occured while trying to run an action after commit: " + e.getMessage());
+                }
+            }
+        }
+
+        private String describe() {
+            if (this.openingSite == null) {
+                return "on thread " + this.owner.getName();
+            }
+            StringBuilder site = new StringBuilder("on thread ").append(this.owner.getName()).append(", opened at");
+            for (StackTraceElement element : this.openingSite.getStackTrace()) {
+                site.append("\n\tat ").append(element);
+            }
+            return site.toString();
+        }
+    }
+
+    /**
+     * Closing state of one scope handle. Registered with the cleaner, it must not reference the handle itself.
+     */
+    private static class HandleState implements Runnable {
+
+        private final Context context;
+        private final boolean root;
+        private volatile boolean closed;
+        private boolean committed;
+
+        private HandleState(Context context, boolean root) {
+            this.context = context;
+            this.root = root;
+        }
+
+        // Runs when the handle became unreachable without being closed
+        @Override
+        public void run() {
+            if (!this.closed) {
+                // A leaked outermost scope leaves the thread stuck in its transaction, it is discarded on next use
+                if (this.root) {
+                    this.context.leaked = true;
+                }
+                SimpleLogger.error("Unit of work was never closed " + this.context.describe());
+            }
+        }
+    }
+}
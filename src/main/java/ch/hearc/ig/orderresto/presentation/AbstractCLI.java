@@ -9,11 +9,20 @@ import java.util.regex.Pattern;
 
 public abstract class AbstractCLI {
 
-    private static final Scanner scanner = new Scanner(System.in);
-    private static final PrintStream printStream = System.out;
+    // The console by default, replaced by a script in batch mode (see BatchCLI)
+    private static Scanner scanner = new Scanner(System.in);
+    private static PrintStream printStream = System.out;
+
+    /**
+     * Makes all the CLIs read their answers from the given input and write to the given output.
+     */
+    static void redirect(Scanner input, PrintStream output) {
+        scanner = input;
+        printStream = output;
+    }
 
     protected void ln(String text) {
-        this.printStream.println(text);
+        printStream.println(text);
     }
 
     protected int readIntFromUser(int maxChoice) {
@@ -24,7 +33,7 @@ public abstract class AbstractCLI {
         int choice = -1;
         while (choice < minChoice || choice > maxChoice) {
             try {
-                choice = this.scanner.nextInt();
+                choice = scanner.nextInt();
                 if (choice < minChoice || choice > maxChoice) {
                     this.ln(String.format("Veuillez choisir un nombre entre %d et %d.", minChoice, maxChoice));
                 }
@@ -41,7 +50,7 @@ public abstract class AbstractCLI {
         String input = null;
         while (input == null) {
             try {
-                input = this.scanner.nextLine();
+                input = scanner.nextLine();
                 if (input.isEmpty() && useDefault != null) {
                     return useDefault;
                 } else if (input.length() < minLength) {
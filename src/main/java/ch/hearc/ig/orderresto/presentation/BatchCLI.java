@@ -0,0 +1,121 @@
+package ch.hearc.ig.orderresto.presentation;
+
+import ch.hearc.ig.orderresto.business.Order;
+import ch.hearc.ig.orderresto.service.OrderIntakeQueue;
+import ch.hearc.ig.orderresto.utils.SimpleLogger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Headless mode of the CLI: places the orders of a script without anyone at the console. Each line of the
+ * script is one order, answered to the same prompts as {@link OrderCLI#createNewOrder()}:
+ *
+ * <pre>
+ * # restaurant product email [idempotency key]
+ * 0 1 test@gmail.com
+ * 2 0 test@gmail.com order-42
+ * </pre>
+ *
+ * The restaurant and the product are given by their index in the lists displayed by the CLI, the customer must
+ * exist. Blank lines and lines starting with '#' are skipped. The orders go through the intake queue, and an
+ * invalid line is reported without stopping the batch.
+ */
+public class BatchCLI extends AbstractCLI {
+
+    private final Path script;
+
+    public BatchCLI(Path script) {
+        this.script = script;
+    }
+
+    /**
+     * Places the orders of the script and waits until they are all committed or rejected.
+     *
+     * @return true if every order of the script was placed.
+     */
+    public boolean run() {
+        long start = System.nanoTime();
+        List<CompletableFuture<Long>> acknowledgements = new ArrayList<>();
+        List<Integer> lineNumbers = new ArrayList<>();
+        int invalidLines = 0;
+
+        // The prompts are not displayed, only the outcome of the batch
+        PrintStream console = System.out;
+        PrintStream discarded = new PrintStream(OutputStream.nullOutputStream());
+
+        try (BufferedReader reader = Files.newBufferedReader(this.script, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                Order order = this.createOrder(line, discarded);
+                if (order == null) {
+                    invalidLines++;
+                    SimpleLogger.warning("Line " + lineNumber + " of the script is not a valid order: " + line);
+                    continue;
+                }
+                acknowledgements.add(OrderIntakeQueue.getInstance().submit(order));
+                lineNumbers.add(lineNumber);
+            }
+        } catch (IOException e) {
+            SimpleLogger.error("An error occured while trying to read the script " + this.script + ": " + e.getMessage());
+            return false;
+        } finally {
+            redirect(new Scanner(System.in), console);
+        }
+
+        int placedOrders = 0;
+        for (int i = 0; i < acknowledgements.size(); i++) {
+            try {
+                acknowledgements.get(i).join();
+                placedOrders++;
+            } catch (CompletionException e) {
+                SimpleLogger.warning("The order of line " + lineNumbers.get(i) + " could not be placed: " + e.getCause().getMessage());
+            }
+        }
+
+        double elapsedSeconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        this.ln(String.format("%d commandes passées, %d refusées, %d lignes invalides, en %.1f s (%.0f commandes/s)",
+                placedOrders, acknowledgements.size() - placedOrders, invalidLines, elapsedSeconds, placedOrders / elapsedSeconds));
+
+        return invalidLines == 0 && placedOrders == acknowledgements.size();
+    }
+
+    // Answers the prompts of OrderCLI with the fields of the line: restaurant, product, existing customer, email
+    private Order createOrder(String line, PrintStream output) {
+        String[] fields = line.split("\\s+");
+        if (fields.length < 3 || fields.length > 4) {
+            return null;
+        }
+        String answers = String.join("\n", fields[0], fields[1], "1", fields[2]) + "\n";
+
+        redirect(new Scanner(answers), output);
+        try {
+            Order order = new OrderCLI().createNewOrder();
+            if (order != null && fields.length == 4) {
+                order.setIdempotencyKey(fields[3]);
+            }
+            return order;
+        } catch (NoSuchElementException e) {
+            // An answer was rejected and the prompt asked again, there is no further answer on the line
+            return null;
+        }
+    }
+}
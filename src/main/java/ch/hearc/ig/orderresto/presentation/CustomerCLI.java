@@ -11,10 +11,7 @@ public class CustomerCLI extends AbstractCLI {
     public Customer getExistingCustomer() {
         this.ln("Quelle est votre addresse email?");
         String email = this.readEmailFromUser();
-        return CustomerService.getInstance().getAllCustomers().stream()
-                .filter(c -> c.getEmail().equals(email))
-                .findFirst()
-                .orElse(null);
+        return CustomerService.getInstance().findByEmail(email).orElse(null);
     }
 
     public Customer createNewCustomer() {
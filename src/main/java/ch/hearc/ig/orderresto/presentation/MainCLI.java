@@ -1,43 +1,70 @@
 package ch.hearc.ig.orderresto.presentation;
 
 import ch.hearc.ig.orderresto.business.Order;
-import ch.hearc.ig.orderresto.service.ProductOrderService;
+import ch.hearc.ig.orderresto.service.OrderEventBus;
+import ch.hearc.ig.orderresto.service.OrderIntakeQueue;
 import ch.hearc.ig.orderresto.persistence.utils.HibernateUtil;
+import ch.hearc.ig.orderresto.utils.SimpleLogger;
+
+import java.util.concurrent.CompletionException;
 
 public class MainCLI extends AbstractCLI {
+
+    /**
+     * Runs the main menu until the user leaves the application. Each action returns to the menu, so a session
+     * can go on for any number of actions.
+     */
     public void run() {
-        this.ln("======================================================");
-        this.ln("Que voulez-vous faire ?");
-        this.ln("0. Quitter l'application");
-        this.ln("1. Faire une nouvelle commande");
-        this.ln("2. Consulter une commande");
-        int userChoice = this.readIntFromUser(2);
-        this.handleUserChoice(userChoice);
+        boolean running = true;
+        while (running) {
+            this.ln("======================================================");
+            this.ln("Que voulez-vous faire ?");
+            this.ln("0. Quitter l'application");
+            this.ln("1. Faire une nouvelle commande");
+            this.ln("2. Consulter une commande");
+            int userChoice = this.readIntFromUser(2);
+            running = this.handleUserChoice(userChoice);
+        }
     }
 
-    private void handleUserChoice(int userChoice) {
+    /**
+     * @return false once the user left the application.
+     */
+    private boolean handleUserChoice(int userChoice) {
         if (userChoice == 0) {
 
-            // Close the database connection as the user leaves the application
+            // Close the database connection as the user leaves the application, once pending orders are committed
             try {
+                OrderIntakeQueue.getInstance().shutdown();
+                OrderEventBus.getInstance().shutdown();
                 HibernateUtil.shutdown();
             } catch (Exception e) {
                 this.ln("Failed to close database connection");
             }
 
             this.ln("Good bye!");
-            return;
+            return false;
         }
         OrderCLI orderCLI = new OrderCLI();
         if (userChoice == 1) {
             Order newOrder = orderCLI.createNewOrder();
-            ProductOrderService.getInstance().addOrderToRestaurant(newOrder);
+            if (newOrder != null) {
+                // The order is committed with the group of orders pending, which takes a few milliseconds, and the
+                // user is told the outcome before the menu is displayed again
+                try {
+                    Long orderId = OrderIntakeQueue.getInstance().submit(newOrder).join();
+                    this.ln("Votre commande n° " + orderId + " est enregistrée.");
+                } catch (CompletionException e) {
+                    SimpleLogger.error("An error occured while trying to place an order: " + e.getCause().getMessage());
+                    this.ln("Désolé, votre commande n'a pas pu être enregistrée, veuillez réessayer.");
+                }
+            }
         } else {
             Order existingOrder = orderCLI.selectOrder();
             if (existingOrder != null) {
                 orderCLI.displayOrder(existingOrder);
             }
         }
-        this.run();
+        return true;
     }
 }
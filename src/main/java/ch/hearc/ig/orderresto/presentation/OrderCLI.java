@@ -5,9 +5,11 @@ import ch.hearc.ig.orderresto.business.Order;
 import ch.hearc.ig.orderresto.business.Product;
 import ch.hearc.ig.orderresto.business.Restaurant;
 import ch.hearc.ig.orderresto.service.CustomerService;
+import ch.hearc.ig.orderresto.service.ProductOrderService;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.UUID;
 
 public class OrderCLI extends AbstractCLI {
 
@@ -17,6 +19,9 @@ public class OrderCLI extends AbstractCLI {
         Restaurant restaurant = (new RestaurantCLI()).getExistingRestaurant();
 
         Product product = (new ProductCLI()).getRestaurantProduct(restaurant);
+        if (product == null) {
+            return null;
+        }
 
         this.ln("======================================================");
         this.ln("0. Annuler");
@@ -24,8 +29,8 @@ public class OrderCLI extends AbstractCLI {
         this.ln("2. Je suis un nouveau client");
 
         int userChoice = this.readIntFromUser(2);
+        // Cancelling returns to the main menu
         if (userChoice == 0) {
-            (new MainCLI()).run();
             return null;
         }
         CustomerCLI customerCLI = new CustomerCLI();
@@ -34,7 +39,13 @@ public class OrderCLI extends AbstractCLI {
             customer = customerCLI.getExistingCustomer();
         } else {
             customer = customerCLI.createNewCustomer();
-            CustomerService.getInstance().addCustomer(customer);
+            if (customer != null && !CustomerService.getInstance().addCustomer(customer)) {
+                customer = null;
+            }
+        }
+        if (customer == null) {
+            this.ln("Désolé, nous ne connaissons pas cette personne.");
+            return null;
         }
 
         // Possible improvements:
@@ -42,11 +53,11 @@ public class OrderCLI extends AbstractCLI {
         // - Ask user for multiple products?
         Order order = new Order(null, customer, restaurant, false, LocalDateTime.now());
         order.addProduct(product);
+        // Identifies this submission, should the order be submitted again it would not be placed twice
+        order.setIdempotencyKey(UUID.randomUUID().toString());
 
-        // Actually place the order (this could/should be in a different method?)
-        product.addOrder(order);
-        restaurant.addOrder(order);
-        customer.addOrder(order);
+        // The order owns its associations, the inverse collections of the product, restaurant and customer are
+        // not loaded outside of a unit of work and are left untouched
 
         this.ln("Merci pour votre commande!");
 
@@ -59,8 +70,8 @@ public class OrderCLI extends AbstractCLI {
             this.ln(String.format("Désolé, nous ne connaissons pas cette personne."));
             return null;
         }
-        //Object[] orders = customer.getOrders().toArray();
-        Object[] orders = CustomerService.getInstance().getOrdersFromCustomer(customer).toArray();
+        // The orders come with their restaurant and products, displaying them does not hit the database again
+        Object[] orders = ProductOrderService.getInstance().getOrderHistory(customer).toArray();
         if (orders.length == 0) {
             this.ln(String.format("Désolé, il n'y a aucune commande pour %s", customer.getEmail()));
             return null;
@@ -1,19 +1,24 @@
 package ch.hearc.ig.orderresto.presentation;
 
+import ch.hearc.ig.orderresto.business.MenuSnapshot;
 import ch.hearc.ig.orderresto.business.Product;
 import ch.hearc.ig.orderresto.business.Restaurant;
-import ch.hearc.ig.orderresto.service.RestaurantService;
+import ch.hearc.ig.orderresto.service.MenuService;
 
 public class ProductCLI extends AbstractCLI {
 
     public Product getRestaurantProduct(Restaurant restaurant) {
-        this.ln(String.format("Bienvenue chez %s. Choisissez un de nos produits:", restaurant.getName()));
-        Object[] products = RestaurantService.getInstance().getProductsFromRestaurant(restaurant).toArray();
-        for (int i = 0 ; i < products.length ; i++) {
-            Product product = (Product) products[i];
-            this.ln(String.format("%d. %s", i, product));
+        // The menu lines are formatted once per catalog version and shared by all the sessions
+        MenuSnapshot menu = MenuService.getInstance().getMenu(restaurant).orElse(null);
+        if (menu == null || menu.size() == 0) {
+            this.ln("Aucun produit n'est disponible pour le moment.");
+            return null;
         }
-        int index = this.readIntFromUser(products.length - 1);
-        return (Product) products[index];
+        this.ln(menu.getTitle());
+        for (int i = 0 ; i < menu.size() ; i++) {
+            this.ln(menu.getLine(i));
+        }
+        int index = this.readIntFromUser(menu.size() - 1);
+        return menu.getProduct(index);
     }
 }
@@ -4,12 +4,16 @@ import ch.hearc.ig.orderresto.business.Customer;
 import ch.hearc.ig.orderresto.business.Order;
 import ch.hearc.ig.orderresto.persistence.utils.HibernateUtil;
 import ch.hearc.ig.orderresto.utils.SimpleLogger;
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.EntityTransaction;
 
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * Service class that provides methods for managing customers, including retrieving, adding, modifying,
@@ -18,18 +22,21 @@ import java.util.Set;
  */
 public class CustomerService {
 
-    private static CustomerService instance;
+    private static final int EMAIL_CACHE_SIZE = 10_000;
+
+    private static final CustomerService instance = new CustomerService();
+
+    private final EmailCache customerIdsByEmail = new EmailCache();
+
     private CustomerService() {}
 
     public static CustomerService getInstance() {
-        if(instance == null) {
-            instance = new CustomerService();
-        }
         return instance;
     }
 
     /**
      * Retrieves all orders for a given customer, including product details for each order.
+     * See {@link ProductOrderService#getOrderHistory(Customer)}, which reads them in a single statement.
      *
      * @param customer the customer whose orders are to be retrieved.
      * @return a set of orders associated with the given customer, or null if an error occurs.
@@ -39,7 +46,7 @@ public class CustomerService {
 
         try {
 
-            orders = customer.getOrders();
+            orders = new LinkedHashSet<>(ProductOrderService.getInstance().getOrderHistory(customer));
 
         } catch (Exception e) {
             SimpleLogger.error("An error occured while trying to get the orders of a customer: " + e.getMessage() );
@@ -57,20 +64,14 @@ public class CustomerService {
      */
     public boolean addCustomer(Customer customer) {
 
-        EntityManager entityManager = HibernateUtil.getEntityManager();
-        EntityTransaction transaction = entityManager.getTransaction();
-
         try {
 
-            transaction.begin();
-
-            entityManager.persist(customer);
+            HibernateUtil.runInTransaction(entityManager -> entityManager.persist(customer));
 
-            transaction.commit();
+            HibernateUtil.afterCommit(() -> this.customerIdsByEmail.put(customer.getEmail(), customer.getId()));
 
             return true;
         } catch (Exception e) {
-            transaction.rollback();
             SimpleLogger.error("An error occured while trying to add a customer: " + e.getMessage());
             e.printStackTrace();  // Log the full stack trace to diagnose the issue
         }
@@ -86,20 +87,25 @@ public class CustomerService {
      */
     public boolean modifyCustomer(Customer customer) {
 
-        EntityManager entityManager = HibernateUtil.getEntityManager();
-        EntityTransaction transaction = entityManager.getTransaction();
-
         try {
-            transaction.begin();
+            Long version = HibernateUtil.inTransaction(entityManager -> {
+                Customer managedCustomer = entityManager.merge(customer);
+                entityManager.flush();
+                return managedCustomer.getVersion();
+            });
+            // The given customer carries the new version, so that it can be modified again
+            customer.setVersion(version);
 
-            entityManager.merge(customer);
-
-            transaction.commit();
+            // The email may have changed, whatever it was before is forgotten
+            HibernateUtil.afterCommit(() -> this.customerIdsByEmail.removeCustomer(customer.getId()));
 
             return true;
         } catch (Exception e) {
-            transaction.rollback();
-            SimpleLogger.error("An error occured while trying to modify a customer: " + e.getMessage());
+            if (HibernateUtil.isOptimisticLockFailure(e)) {
+                SimpleLogger.warning("The customer was modified by someone else in the meantime, reload it before modifying it again");
+            } else {
+                SimpleLogger.error("An error occured while trying to modify a customer: " + e.getMessage());
+            }
         }
 
         return false;
@@ -113,20 +119,19 @@ public class CustomerService {
      */
     public boolean removeCustomer(Customer customer) {
 
-        EntityManager entityManager = HibernateUtil.getEntityManager();
-        EntityTransaction transaction = entityManager.getTransaction();
-
         try {
-            transaction.begin();
+            // The customer comes from a closed unit of work, it has to be attached again before its removal
+            HibernateUtil.runInTransaction(entityManager -> entityManager.remove(entityManager.merge(customer)));
 
-            entityManager.remove(customer);
-
-            transaction.commit();
+            HibernateUtil.afterCommit(() -> this.customerIdsByEmail.removeCustomer(customer.getId()));
 
             return true;
         } catch (Exception e) {
-            transaction.rollback();
-            SimpleLogger.error("An error occured while trying to remove a customer: " + e.getMessage());
+            if (HibernateUtil.isOptimisticLockFailure(e)) {
+                SimpleLogger.warning("The customer was modified by someone else in the meantime, reload it before removing it");
+            } else {
+                SimpleLogger.error("An error occured while trying to remove a customer: " + e.getMessage());
+            }
         }
 
         return false;
@@ -140,10 +145,8 @@ public class CustomerService {
      */
     public Optional<Customer> getCustomerById(Long id) {
 
-        EntityManager entityManager = HibernateUtil.getEntityManager();
-
         try {
-            return Optional.ofNullable(entityManager.find(Customer.class, id));
+            return Optional.ofNullable(HibernateUtil.inTransaction(entityManager -> entityManager.find(Customer.class, id)));
         } catch (Exception e) {
             SimpleLogger.error("An error occured while trying to get a customer by id: " + e.getMessage());
         }
@@ -151,6 +154,47 @@ public class CustomerService {
         return Optional.empty();
     }
 
+    /**
+     * Retrieves a customer by their email address, using the unique index on CLIENT.EMAIL.
+     * Recently looked up addresses are resolved to an id from memory, the customer then being read from the
+     * second-level cache without querying the database.
+     *
+     * @param email the email address of the customer.
+     * @return an Optional containing the customer if found, or an empty Optional if not found or an error occurs.
+     */
+    public Optional<Customer> findByEmail(String email) {
+
+        try {
+            Long cachedId = this.customerIdsByEmail.get(email);
+
+            Optional<Customer> customer = HibernateUtil.inTransaction(entityManager -> {
+                if (cachedId != null) {
+                    Customer cachedCustomer = entityManager.find(Customer.class, cachedId);
+                    if (cachedCustomer != null && email.equals(cachedCustomer.getEmail())) {
+                        return Optional.of(cachedCustomer);
+                    }
+                }
+                return entityManager.createNamedQuery(Customer.FIND_BY_EMAIL, Customer.class)
+                        .setParameter("email", email)
+                        .getResultStream()
+                        .findFirst();
+            });
+
+            // The customer may have been added by an enclosing unit of work, it is only cached once committed
+            if (customer.isPresent()) {
+                Long customerId = customer.get().getId();
+                HibernateUtil.afterCommit(() -> this.customerIdsByEmail.put(email, customerId));
+            } else if (cachedId != null) {
+                this.customerIdsByEmail.removeEmail(email);
+            }
+
+            return customer;
+        } catch (Exception e) {
+            SimpleLogger.error("An error occured while trying to get a customer by email: " + e.getMessage());
+        }
+
+        return Optional.empty();
+    }
 
     /**
      * Retrieves a list of all customers in the system.
@@ -159,10 +203,8 @@ public class CustomerService {
      */
     public List<Customer> getAllCustomers() {
 
-        EntityManager entityManager = HibernateUtil.getEntityManager();
-
         try {
-            return entityManager.createQuery("SELECT c FROM Customer c", Customer.class).getResultList();
+            return HibernateUtil.inTransaction(entityManager -> entityManager.createQuery("SELECT c FROM Customer c", Customer.class).getResultList());
         } catch (Exception e) {
             SimpleLogger.error("An error occured while trying to get all customers: " + e.getMessage());
         }
@@ -170,4 +212,87 @@ public class CustomerService {
         return List.of();
     }
 
+    /**
+     * Retrieves one page of customers ordered by id, using keyset pagination: the page starts right after the
+     * given id, so reading a page costs the same wherever it is in the table.
+     *
+     * @param afterId the id of the last customer of the previous page, or null for the first page.
+     * @param limit the maximum number of customers in the page.
+     * @return the customers of the page, or an empty list if there are none left or an error occurs.
+     */
+    public List<Customer> getCustomersPage(Long afterId, int limit) {
+
+        try {
+            return HibernateUtil.inTransaction(entityManager -> entityManager.createQuery(
+                    "SELECT c FROM Customer c WHERE c.id > :afterId ORDER BY c.id", Customer.class)
+                    .setParameter("afterId", afterId == null ? 0L : afterId)
+                    .setMaxResults(limit)
+                    .getResultList()
+            );
+        } catch (Exception e) {
+            SimpleLogger.error("An error occured while trying to get a page of customers: " + e.getMessage());
+        }
+
+        return List.of();
+    }
+
+    /**
+     * Streams all customers ordered by id, detaching them as they are read so that the whole table can be
+     * walked in constant memory. The stream must be closed once consumed.
+     *
+     * @return the stream of customers, or an empty stream if an error occurs.
+     */
+    public Stream<Customer> streamAllCustomers() {
+
+        try {
+            return HibernateUtil.streamDetached(entityManager -> entityManager.createQuery(
+                    "SELECT c FROM Customer c ORDER BY c.id", Customer.class), HibernateUtil.DEFAULT_FETCH_SIZE);
+        } catch (Exception e) {
+            SimpleLogger.error("An error occured while trying to stream all customers: " + e.getMessage());
+        }
+
+        return Stream.empty();
+    }
+
+    /**
+     * Ids of the customers recently looked up by email, the least recently used entries being evicted first. The
+     * email of each cached id is kept as well, so that a modified or removed customer is forgotten at once.
+     */
+    private static class EmailCache {
+
+        private final Map<String, Long> idsByEmail = new LinkedHashMap<>(16, 0.75f, true);
+        private final Map<Long, String> emailsById = new HashMap<>();
+
+        private synchronized Long get(String email) {
+            return this.idsByEmail.get(email);
+        }
+
+        private synchronized void put(String email, Long id) {
+            this.removeCustomer(id);
+            this.removeEmail(email);
+            this.idsByEmail.put(email, id);
+            this.emailsById.put(id, email);
+
+            if (this.idsByEmail.size() > EMAIL_CACHE_SIZE) {
+                Iterator<Map.Entry<String, Long>> eldest = this.idsByEmail.entrySet().iterator();
+                this.emailsById.remove(eldest.next().getValue());
+                eldest.remove();
+            }
+        }
+
+        private synchronized void removeEmail(String email) {
+            Long id = this.idsByEmail.remove(email);
+            if (id != null) {
+                this.emailsById.remove(id);
+            }
+        }
+
+        private synchronized void removeCustomer(Long id) {
+            String email = this.emailsById.remove(id);
+            if (email != null) {
+                this.idsByEmail.remove(email);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,380 @@
+package ch.hearc.ig.orderresto.service;
+
+import ch.hearc.ig.orderresto.business.KitchenTicket;
+import ch.hearc.ig.orderresto.persistence.utils.HibernateUtil;
+import ch.hearc.ig.orderresto.utils.SimpleLogger;
+import org.hibernate.query.Query;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+/**
+ * Schedules the orders for the kitchens: each restaurant has a queue of the orders still to prepare, sorted by
+ * due time (see {@link KitchenTicket#BY_PRIORITY}), from which its kitchen workers take the next order to
+ * prepare in O(log n). The queues are fed by the {@link OrderEventBus} as orders are committed, and rebuilt from
+ * COMMANDE when the application starts.
+ * A removed or modified order is not searched in its queue: its ticket is only forgotten, and skipped when it
+ * comes up (lazy cancellation). The queues are compacted when forgotten tickets outnumber the open ones.
+ * Orders left in a queue long after they were due, e.g. prepared without being taken, expire so that the queues
+ * do not grow without bound.
+ *
+ * Settings, as system properties: "orderresto.kitchen.takeAwayMinutes" and "orderresto.kitchen.dineInMinutes"
+ * (time to prepare an order, defaults 15 and 20), "orderresto.kitchen.rebuildWindowMinutes" (orders placed
+ * this long before a restart are scheduled again, default 60), "orderresto.kitchen.expiryMinutes" (time after
+ * which an order due and not taken expires, default 120).
+ */
+public class KitchenScheduler {
+
+    private static final KitchenScheduler instance = new KitchenScheduler(
+            Duration.ofMinutes(Long.getLong("orderresto.kitchen.takeAwayMinutes", 15)),
+            Duration.ofMinutes(Long.getLong("orderresto.kitchen.dineInMinutes", 20)),
+            Duration.ofMinutes(Long.getLong("orderresto.kitchen.rebuildWindowMinutes", 60)),
+            Duration.ofMinutes(Long.getLong("orderresto.kitchen.expiryMinutes", 120))
+    );
+
+    private static final int MIN_STALE_TICKETS_TO_COMPACT = 1_024;
+
+    private final Duration takeAwayPreparation;
+    private final Duration dineInPreparation;
+    private final Duration rebuildWindow;
+    private final Duration expiry;
+
+    private final Map<Long, KitchenQueue> queuesByRestaurant = new ConcurrentHashMap<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    // While the queues are rebuilt, the orders announced by an event or taken are settled: the rebuild may have
+    // read them before, it leaves them alone
+    private final Object rebuildLock = new Object();
+    private final Set<Long> settledDuringRebuild = ConcurrentHashMap.newKeySet();
+    private volatile boolean rebuilding;
+    private volatile LocalDateTime rebuiltSince;
+
+    private final LongAdder scheduledTickets = new LongAdder();
+    private final LongAdder takenTickets = new LongAdder();
+    private final LongAdder cancelledTickets = new LongAdder();
+    private final LongAdder skippedTickets = new LongAdder();
+    private final LongAdder expiredTickets = new LongAdder();
+
+    private KitchenScheduler(Duration takeAwayPreparation, Duration dineInPreparation, Duration rebuildWindow, Duration expiry) {
+        this.takeAwayPreparation = takeAwayPreparation;
+        this.dineInPreparation = dineInPreparation;
+        this.rebuildWindow = rebuildWindow;
+        this.expiry = expiry;
+    }
+
+    public static KitchenScheduler getInstance() {
+        return instance;
+    }
+
+    /**
+     * Subscribes to the order events, then schedules the orders placed within the rebuild window. Does nothing
+     * if already started.
+     */
+    public void start() {
+        if (!this.started.compareAndSet(false, true)) {
+            return;
+        }
+        this.rebuiltSince = LocalDateTime.now().minus(this.rebuildWindow);
+        this.rebuilding = true;
+
+        // Subscribed first so that no order committed during the rebuild is missed, the rebuild leaves the
+        // orders settled by an event untouched
+        OrderEventBus.getInstance().subscribe("kitchen", (event, sequence, endOfBatch) -> this.settle(event.getOrderId(), () -> {
+            switch (event.getType()) {
+                case PLACED -> this.schedule(event.getOrderId(), event.getRestaurantId(), event.isTakeAway(), event.getWhen());
+                case MODIFIED -> this.reschedule(event.getOrderId(), event.getRestaurantId(), event.isTakeAway(), event.getWhen());
+                case REMOVED -> this.cancel(event.getOrderId(), event.getRestaurantId());
+            }
+            return true;
+        }));
+        this.rebuild();
+    }
+
+    /**
+     * Takes the next order to prepare in a restaurant, waiting for one if its queue is empty. The order is then
+     * no longer scheduled.
+     *
+     * @param restaurantId the id of the restaurant.
+     * @param timeoutMillis the longest time to wait, in milliseconds.
+     * @return the ticket of the order, or null if none was scheduled in time.
+     */
+    public KitchenTicket takeNext(Long restaurantId, long timeoutMillis) throws InterruptedException {
+        KitchenQueue queue = this.queueOf(restaurantId);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.expire(queue);
+
+        while (true) {
+            KitchenTicket ticket = queue.tickets.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            if (ticket == null) {
+                return null;
+            }
+            if (this.take(queue, ticket)) {
+                this.takenTickets.increment();
+                return ticket;
+            }
+            this.skippedTickets.increment();
+        }
+    }
+
+    /**
+     * Takes the next order to prepare in a restaurant without waiting, see {@link #takeNext(Long, long)}.
+     *
+     * @param restaurantId the id of the restaurant.
+     * @return the ticket of the order, or null if no order is scheduled.
+     */
+    public KitchenTicket pollNext(Long restaurantId) {
+        KitchenQueue queue = this.queueOf(restaurantId);
+        this.expire(queue);
+
+        KitchenTicket ticket;
+        while ((ticket = queue.tickets.poll()) != null) {
+            if (this.take(queue, ticket)) {
+                this.takenTickets.increment();
+                return ticket;
+            }
+            this.skippedTickets.increment();
+        }
+        return null;
+    }
+
+    /**
+     * @param restaurantId the id of the restaurant.
+     * @return the orders scheduled in the restaurant, by priority, e.g. for a kitchen display.
+     */
+    public List<KitchenTicket> getOpenTickets(Long restaurantId) {
+        KitchenQueue queue = this.queueOf(restaurantId);
+        this.expire(queue);
+
+        List<KitchenTicket> tickets = new ArrayList<>(queue.openTickets.values());
+        tickets.sort(KitchenTicket.BY_PRIORITY);
+        return tickets;
+    }
+
+    /**
+     * @param restaurantId the id of the restaurant.
+     * @return the number of orders scheduled in the restaurant.
+     */
+    public int getOpenTicketCount(Long restaurantId) {
+        return this.queueOf(restaurantId).openTickets.size();
+    }
+
+    /**
+     * @return a one line summary of the kitchen queues, suitable for the logs.
+     */
+    public String summary() {
+        int openTickets = 0;
+        for (KitchenQueue queue : this.queuesByRestaurant.values()) {
+            openTickets += queue.openTickets.size();
+        }
+        return String.format("kitchen queues=%d open=%d scheduled=%d taken=%d cancelled=%d skipped=%d expired=%d",
+                this.queuesByRestaurant.size(),
+                openTickets,
+                this.scheduledTickets.sum(),
+                this.takenTickets.sum(),
+                this.cancelledTickets.sum(),
+                this.skippedTickets.sum(),
+                this.expiredTickets.sum()
+        );
+    }
+
+    private void schedule(long orderId, long restaurantId, boolean takeAway, LocalDateTime when) {
+        KitchenQueue queue = this.queueOf(restaurantId);
+        if (queue.add(this.ticketOf(orderId, restaurantId, takeAway, when))) {
+            this.scheduledTickets.increment();
+        }
+        this.expire(queue);
+    }
+
+    private void reschedule(long orderId, long restaurantId, boolean takeAway, LocalDateTime when) {
+        KitchenTicket ticket = this.ticketOf(orderId, restaurantId, takeAway, when);
+        KitchenQueue queue = this.queueOf(restaurantId);
+        if (queue.replace(ticket)) {
+            return;
+        }
+        // Not scheduled yet, the rebuild may have read the order before it was modified and leaves it to the event
+        if (this.rebuilding && !when.isBefore(this.rebuiltSince) && !this.settledDuringRebuild.contains(orderId) && queue.add(ticket)) {
+            this.scheduledTickets.increment();
+        }
+    }
+
+    private void cancel(long orderId, long restaurantId) {
+        if (this.queueOf(restaurantId).cancel(orderId)) {
+            this.cancelledTickets.increment();
+        }
+    }
+
+    // While the queues are rebuilt, a taken order is settled at once, so that the rebuild does not schedule it again
+    private boolean take(KitchenQueue queue, KitchenTicket ticket) {
+        return this.settle(ticket.getOrderId(), () -> queue.take(ticket));
+    }
+
+    private boolean settle(long orderId, BooleanSupplier action) {
+        if (!this.rebuilding) {
+            return action.getAsBoolean();
+        }
+        synchronized (this.rebuildLock) {
+            boolean done = action.getAsBoolean();
+            if (done) {
+                this.settledDuringRebuild.add(orderId);
+            }
+            return done;
+        }
+    }
+
+    private void expire(KitchenQueue queue) {
+        int expired = queue.expire(LocalDateTime.now().minus(this.expiry));
+        if (expired > 0) {
+            this.expiredTickets.add(expired);
+        }
+    }
+
+    private KitchenTicket ticketOf(long orderId, long restaurantId, boolean takeAway, LocalDateTime when) {
+        LocalDateTime dueAt = when.plus(takeAway ? this.takeAwayPreparation : this.dineInPreparation);
+        return new KitchenTicket(orderId, restaurantId, takeAway, when, dueAt);
+    }
+
+    private KitchenQueue queueOf(Long restaurantId) {
+        return this.queuesByRestaurant.computeIfAbsent(restaurantId, id -> new KitchenQueue());
+    }
+
+    // The orders placed within the window are read as plain values through the QUAND index, without loading them.
+    // Orders already prepared before the restart cannot be told apart and are scheduled again
+    @SuppressWarnings("unchecked")
+    private void rebuild() {
+        LocalDateTime since = this.rebuiltSince;
+
+        try {
+            int rebuilt = HibernateUtil.inTransaction(entityManager -> {
+                int scheduled = 0;
+                Query<Object[]> query = entityManager.createQuery(
+                        "SELECT o.id, o.restaurant.id, o.takeAway, o.when FROM Order o WHERE o.when >= :since", Object[].class)
+                        .setParameter("since", since)
+                        .unwrap(Query.class);
+
+                try (Stream<Object[]> orders = query.setFetchSize(HibernateUtil.DEFAULT_FETCH_SIZE).stream()) {
+                    for (Object[] order : (Iterable<Object[]>) orders::iterator) {
+                        // Checked and scheduled at once, an event or a worker cannot settle the order in between
+                        synchronized (this.rebuildLock) {
+                            if (!this.settledDuringRebuild.contains((Long) order[0])) {
+                                this.schedule((Long) order[0], (Long) order[1], (Boolean) order[2], (LocalDateTime) order[3]);
+                                scheduled++;
+                            }
+                        }
+                    }
+                }
+                return scheduled;
+            });
+
+            SimpleLogger.info("Kitchen queues rebuilt with the " + rebuilt + " orders placed since " + since);
+        } catch (Exception e) {
+            SimpleLogger.error("An error occured while trying to rebuild the kitchen queues: " + e.getMessage() );
+        } finally {
+            synchronized (this.rebuildLock) {
+                this.rebuilding = false;
+                this.settledDuringRebuild.clear();
+            }
+        }
+    }
+
+    /**
+     * The queue of one restaurant: a heap of tickets, and the open ticket of each order. A ticket of the heap that
+     * is no longer the open ticket of its order was cancelled or replaced, and is skipped.
+     */
+    private static class KitchenQueue {
+
+        private final PriorityBlockingQueue<KitchenTicket> tickets = new PriorityBlockingQueue<>(64, KitchenTicket.BY_PRIORITY);
+        private final Map<Long, KitchenTicket> openTickets = new ConcurrentHashMap<>();
+        private final AtomicInteger staleTickets = new AtomicInteger();
+
+        // Only the first ticket of an order is scheduled, the order may be both rebuilt and announced
+        private boolean add(KitchenTicket ticket) {
+            if (this.openTickets.putIfAbsent(ticket.getOrderId(), ticket) != null) {
+                return false;
+            }
+            this.tickets.add(ticket);
+            return true;
+        }
+
+        // An order taken by the kitchen in the meantime is not scheduled again
+        private boolean replace(KitchenTicket ticket) {
+            if (this.openTickets.replace(ticket.getOrderId(), ticket) == null) {
+                return false;
+            }
+            this.tickets.add(ticket);
+            this.forget();
+            return true;
+        }
+
+        private boolean cancel(long orderId) {
+            if (this.openTickets.remove(orderId) == null) {
+                return false;
+            }
+            this.forget();
+            return true;
+        }
+
+        // Only one worker can take a given ticket, and only while it is the open ticket of its order
+        private boolean take(KitchenTicket ticket) {
+            if (this.openTickets.remove(ticket.getOrderId(), ticket)) {
+                return true;
+            }
+            this.staleTickets.decrementAndGet();
+            return false;
+        }
+
+        // The tickets due first are at the head of the heap, only the head is looked at
+        private int expire(LocalDateTime dueBefore) {
+            int expired = 0;
+            KitchenTicket head;
+            while ((head = this.tickets.peek()) != null && head.getDueAt().isBefore(dueBefore)) {
+                KitchenTicket ticket = this.tickets.poll();
+                if (ticket == null) {
+                    break;
+                }
+                if (!ticket.getDueAt().isBefore(dueBefore)) {
+                    // A worker took the head in the meantime, the ticket polled instead is put back
+                    this.tickets.add(ticket);
+                    break;
+                }
+                if (this.openTickets.remove(ticket.getOrderId(), ticket)) {
+                    expired++;
+                } else {
+                    this.staleTickets.decrementAndGet();
+                }
+            }
+            return expired;
+        }
+
+        private void forget() {
+            int stale = this.staleTickets.incrementAndGet();
+            if (stale >= MIN_STALE_TICKETS_TO_COMPACT && stale > this.openTickets.size()) {
+                this.compact();
+            }
+        }
+
+        // Removes the stale tickets in a single pass, the heap being rebuilt once
+        private synchronized void compact() {
+            AtomicInteger removed = new AtomicInteger();
+            this.tickets.removeIf(ticket -> {
+                boolean stale = this.openTickets.get(ticket.getOrderId()) != ticket;
+                if (stale) {
+                    removed.incrementAndGet();
+                }
+                return stale;
+            });
+            this.staleTickets.addAndGet(-removed.get());
+        }
+    }
+}
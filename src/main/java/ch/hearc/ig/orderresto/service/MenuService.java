@@ -0,0 +1,92 @@
+package ch.hearc.ig.orderresto.service;
+
+import ch.hearc.ig.orderresto.business.MenuSnapshot;
+import ch.hearc.ig.orderresto.business.Product;
+import ch.hearc.ig.orderresto.business.Restaurant;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Service class serving the menus of the restaurants as {@link MenuSnapshot}s. A snapshot is built the first time
+ * the menu of a restaurant is requested, then every session reads the same snapshot without locking until the
+ * catalog changes. {@link ProductOrderService} invalidates the snapshot of a restaurant whenever it writes its
+ * products, the next request builds a new one.
+ */
+public class MenuService {
+
+    private static final MenuService instance = new MenuService();
+
+    private final Map<Long, MenuSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    // Every snapshot and invalidation takes the next version, so they can be ordered
+    private final AtomicLong versions = new AtomicLong();
+    private final Map<Long, Long> invalidationVersions = new ConcurrentHashMap<>();
+    private volatile long globalInvalidationVersion;
+
+    private MenuService() {}
+
+    public static MenuService getInstance() {
+        return instance;
+    }
+
+    /**
+     * Retrieves the menu of a restaurant, built from its catalog if there is no up to date snapshot.
+     *
+     * @param restaurant the restaurant whose menu is to be retrieved.
+     * @return an Optional containing the menu, or an empty Optional if the catalog could not be read.
+     */
+    public Optional<MenuSnapshot> getMenu(Restaurant restaurant) {
+        MenuSnapshot snapshot = this.snapshots.get(restaurant.getId());
+        if (snapshot != null) {
+            return Optional.of(snapshot);
+        }
+        return Optional.ofNullable(this.build(restaurant));
+    }
+
+    /**
+     * Discards the menu of a restaurant, to be called once a change of its catalog is committed. A snapshot that
+     * was being built from the previous catalog is not kept.
+     *
+     * @param restaurantId the id of the restaurant whose catalog changed.
+     */
+    public void invalidate(Long restaurantId) {
+        this.invalidationVersions.put(restaurantId, this.versions.incrementAndGet());
+        this.snapshots.remove(restaurantId);
+    }
+
+    /**
+     * Discards the menus of all the restaurants, when the restaurants affected by a change are not known.
+     */
+    public void invalidateAll() {
+        this.globalInvalidationVersion = this.versions.incrementAndGet();
+        this.snapshots.clear();
+    }
+
+    private MenuSnapshot build(Restaurant restaurant) {
+        // Taken before the catalog is read, so that any invalidation made meanwhile has a higher version
+        long version = this.versions.incrementAndGet();
+
+        Set<Product> catalog = RestaurantService.getInstance().getProductsFromRestaurant(restaurant);
+        if (catalog == null) {
+            return null;
+        }
+        MenuSnapshot built = new MenuSnapshot(restaurant, version, new ArrayList<>(catalog));
+
+        // Published only if the catalog was not changed while it was read, nor a more recent snapshot published.
+        // Otherwise it is still returned to this caller, like a snapshot read just before the change.
+        this.snapshots.compute(restaurant.getId(), (restaurantId, current) -> {
+            long invalidatedAt = Math.max(this.globalInvalidationVersion, this.invalidationVersions.getOrDefault(restaurantId, 0L));
+            if (version < invalidatedAt) {
+                return current;
+            }
+            return current != null && current.getVersion() > version ? current : built;
+        });
+
+        return built;
+    }
+}
@@ -0,0 +1,184 @@
+package ch.hearc.ig.orderresto.service;
+
+import ch.hearc.ig.orderresto.business.ArchivedOrder;
+import ch.hearc.ig.orderresto.business.Order;
+import ch.hearc.ig.orderresto.persistence.utils.ConnectionPoolMetrics;
+import ch.hearc.ig.orderresto.persistence.utils.HibernateUtil;
+import ch.hearc.ig.orderresto.utils.SimpleLogger;
+import jakarta.persistence.EntityManager;
+import org.hibernate.query.NativeQuery;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Job moving the orders older than the retention period from COMMANDE and PRODUIT_COMMANDE to COMMANDE_ARCHIVE
+ * and PRODUIT_COMMANDE_ARCHIVE, where they remain readable as {@link ArchivedOrder}. The idempotency keys of the
+ * orders are not archived: the retention period must exceed {@link ProductOrderService#IDEMPOTENCY_KEY_LIFETIME},
+ * so that a retried submission always finds the order it retries.
+ * The orders are moved by chunks, each in its own short transaction, so that the job never holds many row locks
+ * and can be interrupted at any time without losing anything. Between two chunks, the job pauses long enough to
+ * stay under its share of the database time, and longer when the connection pool has threads waiting.
+ *
+ * Defaults, as system properties: "orderresto.archive.retentionDays" (365) and "orderresto.archive.chunkSize" (500).
+ */
+public class OrderArchiver {
+
+    // Oracle accepts at most 1000 expressions in an IN list
+    private static final int MAX_CHUNK_SIZE = 1_000;
+
+    // Pause multiplier applied while live requests are waiting for a connection
+    private static final int CONTENTION_BACKOFF = 4;
+
+    private final Duration retention;
+    private final int chunkSize;
+    private final long minPauseMillis;
+    private final double dutyCycle;
+
+    private OrderArchiver(Duration retention, int chunkSize, long minPauseMillis, double dutyCycle) {
+        this.retention = retention;
+        this.chunkSize = chunkSize;
+        this.minPauseMillis = minPauseMillis;
+        this.dutyCycle = dutyCycle;
+    }
+
+    /**
+     * Archives the orders placed before now minus the retention period.
+     *
+     * @return the number of orders archived.
+     */
+    public int archive() {
+        return this.archiveOrdersBefore(LocalDateTime.now().minus(this.retention));
+    }
+
+    /**
+     * Archives the orders placed before the given cutoff. If a chunk fails, the job stops, the chunks committed
+     * before it stay archived.
+     *
+     * @param cutoff the orders placed strictly before this moment are archived.
+     * @return the number of orders archived.
+     */
+    public int archiveOrdersBefore(LocalDateTime cutoff) {
+        int archivedOrders = 0;
+        int chunks = 0;
+        long start = System.nanoTime();
+
+        try {
+            while (true) {
+                long chunkStart = System.nanoTime();
+                int movedOrders = HibernateUtil.inTransaction(entityManager -> this.archiveChunk(entityManager, cutoff));
+                if (movedOrders == 0) {
+                    break;
+                }
+                archivedOrders += movedOrders;
+                chunks++;
+
+                this.throttle(System.nanoTime() - chunkStart);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            SimpleLogger.warning("Order archival interrupted");
+        } catch (Exception e) {
+            SimpleLogger.error("An error occured while trying to archive orders: " + e.getMessage());
+        }
+
+        SimpleLogger.info(String.format("Archived %d orders placed before %s in %d chunks (%.1f s)",
+                archivedOrders, cutoff, chunks, (System.nanoTime() - start) / 1_000_000_000.0));
+
+        return archivedOrders;
+    }
+
+    private int archiveChunk(EntityManager entityManager, LocalDateTime cutoff) {
+        List<Long> orderIds = entityManager.createQuery(
+                "SELECT o.id FROM Order o WHERE o.when < :cutoff ORDER BY o.id", Long.class)
+                .setParameter("cutoff", cutoff)
+                .setMaxResults(this.chunkSize)
+                .getResultList();
+
+        if (orderIds.isEmpty()) {
+            return 0;
+        }
+
+        this.executeOnOrders(entityManager, ArchivedOrder.class, orderIds,
+                "INSERT INTO COMMANDE_ARCHIVE (NUMERO, FK_CLIENT, FK_RESTO, A_EMPORTER, QUAND, MONTANT_TOTAL) "
+                        + "SELECT NUMERO, FK_CLIENT, FK_RESTO, A_EMPORTER, QUAND, MONTANT_TOTAL FROM COMMANDE WHERE NUMERO IN (:orderIds)");
+        this.executeOnOrders(entityManager, ArchivedOrder.class, orderIds,
+                "INSERT INTO PRODUIT_COMMANDE_ARCHIVE (FK_COMMANDE, FK_PRODUIT) "
+                        + "SELECT FK_COMMANDE, FK_PRODUIT FROM PRODUIT_COMMANDE WHERE FK_COMMANDE IN (:orderIds)");
+        this.executeOnOrders(entityManager, Order.class, orderIds,
+                "DELETE FROM PRODUIT_COMMANDE WHERE FK_COMMANDE IN (:orderIds)");
+        this.executeOnOrders(entityManager, Order.class, orderIds,
+                "DELETE FROM COMMANDE WHERE NUMERO IN (:orderIds)");
+
+        return orderIds.size();
+    }
+
+    // The statement is declared to affect the given entity only, so that Hibernate does not invalidate the whole
+    // second-level cache as it does for native statements by default
+    private void executeOnOrders(EntityManager entityManager, Class<?> affectedEntity, List<Long> orderIds, String sql) {
+        entityManager.createNativeQuery(sql)
+                .unwrap(NativeQuery.class)
+                .addSynchronizedEntityClass(affectedEntity)
+                .setParameter("orderIds", orderIds)
+                .executeUpdate();
+    }
+
+    private void throttle(long chunkNanos) throws InterruptedException {
+        // Working during dutyCycle of the time means pausing (1 - dutyCycle) / dutyCycle times as long as a chunk took
+        long pauseMillis = Math.max(this.minPauseMillis, (long) (chunkNanos / 1_000_000.0 * (1 - this.dutyCycle) / this.dutyCycle));
+        if (ConnectionPoolMetrics.getWaitingThreads() > 0) {
+            pauseMillis *= CONTENTION_BACKOFF;
+        }
+        Thread.sleep(pauseMillis);
+    }
+
+    public static class Builder {
+        private Duration retention = Duration.ofDays(Long.getLong("orderresto.archive.retentionDays", 365));
+        private int chunkSize = Integer.getInteger("orderresto.archive.chunkSize", 500);
+        private long minPauseMillis = 50;
+        private double dutyCycle = 0.25;
+
+        /**
+         * @param retention the age of the orders to archive, longer than the lifetime of the idempotency keys.
+         */
+        public Builder withRetention(Duration retention) {
+            this.retention = retention;
+            return this;
+        }
+
+        /**
+         * @param chunkSize the number of orders moved per transaction, at most 1000.
+         */
+        public Builder withChunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        public Builder withMinPauseMillis(long minPauseMillis) {
+            this.minPauseMillis = minPauseMillis;
+            return this;
+        }
+
+        /**
+         * @param dutyCycle the share of the time the job may spend working, between 0 (excluded) and 1.
+         */
+        public Builder withDutyCycle(double dutyCycle) {
+            this.dutyCycle = dutyCycle;
+            return this;
+        }
+
+        public OrderArchiver build() {
+            if (this.retention.compareTo(ProductOrderService.IDEMPOTENCY_KEY_LIFETIME) <= 0) {
+                throw new IllegalArgumentException("The retention must be longer than " + ProductOrderService.IDEMPOTENCY_KEY_LIFETIME.toHours() + " hours, the lifetime of the idempotency keys");
+            }
+            if (this.chunkSize < 1 || this.chunkSize > MAX_CHUNK_SIZE) {
+                throw new IllegalArgumentException("The chunk size must be between 1 and " + MAX_CHUNK_SIZE);
+            }
+            if (this.dutyCycle <= 0 || this.dutyCycle > 1) {
+                throw new IllegalArgumentException("The duty cycle must be greater than 0 and at most 1");
+            }
+            return new OrderArchiver(this.retention, this.chunkSize, this.minPauseMillis, this.dutyCycle);
+        }
+    }
+}
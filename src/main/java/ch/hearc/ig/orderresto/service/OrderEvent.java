@@ -0,0 +1,81 @@
+package ch.hearc.ig.orderresto.service;
+
+import ch.hearc.ig.orderresto.business.Order;
+
+import java.time.LocalDateTime;
+
+/**
+ * A change made to an order, as announced by {@link OrderEventBus} once committed. Events are slots of the ring
+ * buffer, allocated once and overwritten by later events: a handler must copy the values it keeps.
+ */
+public class OrderEvent {
+
+    public enum Type {
+        PLACED,
+        MODIFIED,
+        REMOVED
+    }
+
+    private Type type;
+    private long orderId;
+    private long version;
+    private long customerId;
+    private long restaurantId;
+    private boolean takeAway;
+    private LocalDateTime when;
+    private long totalCents;
+    private long publishedAt;
+
+    OrderEvent() {}
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getOrderId() {
+        return orderId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getCustomerId() {
+        return customerId;
+    }
+
+    public long getRestaurantId() {
+        return restaurantId;
+    }
+
+    public boolean isTakeAway() {
+        return takeAway;
+    }
+
+    public LocalDateTime getWhen() {
+        return when;
+    }
+
+    public long getTotalCents() {
+        return totalCents;
+    }
+
+    /**
+     * @return the time the event was published, from {@link System#nanoTime()}.
+     */
+    public long getPublishedAt() {
+        return publishedAt;
+    }
+
+    void set(Type type, Order order, long publishedAt) {
+        this.type = type;
+        this.orderId = order.getId();
+        this.version = order.getVersion() == null ? 0 : order.getVersion();
+        this.customerId = order.getCustomer().getId();
+        this.restaurantId = order.getRestaurant().getId();
+        this.takeAway = Boolean.TRUE.equals(order.getTakeAway());
+        this.when = order.getWhen();
+        this.totalCents = order.getTotalCents();
+        this.publishedAt = publishedAt;
+    }
+}
@@ -0,0 +1,333 @@
+package ch.hearc.ig.orderresto.service;
+
+import ch.hearc.ig.orderresto.business.Order;
+import ch.hearc.ig.orderresto.utils.SimpleLogger;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-process bus announcing the changes made to orders by {@link ProductOrderService}, once they are committed,
+ * so that other components react to them instead of polling COMMANDE.
+ * The events are written into a ring buffer of preallocated slots: publishing copies a few values into the next
+ * slot and moves the cursor, without allocating. Publishers take turns, so the buffer has a single producer at
+ * a time, and every consumer reads all the events on its own thread, by batches of what was published since its
+ * previous read. When the buffer is full, publishers wait for the slowest consumer.
+ *
+ * Settings, as system properties: "orderresto.events.bufferSize" (slots, a power of two, default 1024) and
+ * "orderresto.events.waitStrategy" (how idle consumers wait, see {@link WaitStrategy}, default BLOCKING).
+ */
+public class OrderEventBus {
+
+    /**
+     * How a consumer waits for events, from the lowest latency and highest CPU use down.
+     */
+    public enum WaitStrategy {
+        // Spins on the cursor, keeps a core busy
+        BUSY_SPIN,
+        // Spins for a while, then yields the core to other threads between checks
+        YIELDING,
+        // Spins, yields, then sleeps for 0.1 ms between checks
+        SLEEPING,
+        // Sleeps until an event is published, the publisher wakes it up
+        BLOCKING
+    }
+
+    private static final OrderEventBus instance = new OrderEventBus(
+            Integer.getInteger("orderresto.events.bufferSize", 1_024),
+            WaitStrategy.valueOf(System.getProperty("orderresto.events.waitStrategy", WaitStrategy.BLOCKING.name()))
+    );
+
+    private static final int SPIN_TRIES = 100;
+    private static final long SLEEP_NANOS = 100_000;
+
+    private final OrderEvent[] slots;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+
+    // Sequence of the last event published, readable by the consumers once set
+    private final AtomicLong cursor = new AtomicLong(-1);
+    private final List<EventConsumer> consumers = new CopyOnWriteArrayList<>();
+
+    private final Object publishLock = new Object();
+    // Lowest sequence reached by the consumers when last checked, read again only when the buffer seems full
+    private long cachedGatingSequence = -1;
+    // Only written under the publish lock, read without it, so that a publisher waiting for a slot blocks no reader
+    private volatile long droppedEvents;
+    private volatile long producerWaits;
+
+    private final ReentrantLock waitLock = new ReentrantLock();
+    private final Condition eventPublished = this.waitLock.newCondition();
+    private volatile boolean running = true;
+
+    // Package-private for the tests, the application uses the single instance configured by the system properties
+    OrderEventBus(int bufferSize, WaitStrategy waitStrategy) {
+        if (Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("The buffer size must be a power of two");
+        }
+        this.slots = new OrderEvent[bufferSize];
+        for (int i = 0; i < bufferSize; i++) {
+            this.slots[i] = new OrderEvent();
+        }
+        this.mask = bufferSize - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    public static OrderEventBus getInstance() {
+        return instance;
+    }
+
+    /**
+     * Starts a consumer, on a thread of its own, that receives the events published from now on.
+     *
+     * @param name the name of the consumer, used for its thread and its metrics.
+     * @param handler the handler of the events.
+     */
+    public void subscribe(String name, OrderEventHandler handler) {
+        EventConsumer consumer;
+        synchronized (this.publishLock) {
+            consumer = new EventConsumer(name, handler, this.cursor.get());
+            this.consumers.add(consumer);
+        }
+        consumer.thread.start();
+    }
+
+    /**
+     * Publishes a change made to an order, to be called once the change is committed. Events published after
+     * the bus is stopped are dropped.
+     *
+     * @param type the kind of change.
+     * @param order the order as committed.
+     */
+    public void publish(OrderEvent.Type type, Order order) {
+        synchronized (this.publishLock) {
+            if (!this.running) {
+                this.droppedEvents++;
+                return;
+            }
+
+            long sequence = this.cursor.get() + 1;
+            long wrapPoint = sequence - this.slots.length;
+            if (wrapPoint > this.cachedGatingSequence) {
+                this.cachedGatingSequence = this.minimumConsumerSequence();
+                if (wrapPoint > this.cachedGatingSequence) {
+                    this.producerWaits++;
+                }
+                // The slot is still to be read by a consumer
+                while (wrapPoint > this.cachedGatingSequence && this.running) {
+                    LockSupport.parkNanos(SLEEP_NANOS);
+                    this.cachedGatingSequence = this.minimumConsumerSequence();
+                }
+                // Stopped while waiting, the slot may still hold an event to be handled
+                if (wrapPoint > this.cachedGatingSequence) {
+                    this.droppedEvents++;
+                    return;
+                }
+            }
+
+            this.slots[(int) sequence & this.mask].set(type, order, System.nanoTime());
+            this.cursor.set(sequence);
+        }
+
+        if (this.waitStrategy == WaitStrategy.BLOCKING) {
+            this.signalConsumers();
+        }
+    }
+
+    /**
+     * Stops the bus: the consumers handle the events already published, then stop.
+     */
+    public void shutdown() {
+        this.running = false;
+        this.signalConsumers();
+
+        for (EventConsumer consumer : this.consumers) {
+            try {
+                consumer.thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        SimpleLogger.info("Order event bus stopped, " + this.summary());
+    }
+
+    public long getPublishedEvents() {
+        return this.cursor.get() + 1;
+    }
+
+    public long getDroppedEvents() {
+        return this.droppedEvents;
+    }
+
+    /**
+     * @return the number of events whose publisher had to wait for a slot, as the buffer was full.
+     */
+    public long getProducerWaits() {
+        return this.producerWaits;
+    }
+
+    /**
+     * @param name the name of a consumer.
+     * @return the number of events published that the consumer has not handled yet, or -1 if it is unknown.
+     */
+    public long getLag(String name) {
+        for (EventConsumer consumer : this.consumers) {
+            if (consumer.name.equals(name)) {
+                return this.cursor.get() - consumer.sequence.get();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param name the name of a consumer.
+     * @return the largest number of events the consumer had to catch up with at once, or -1 if it is unknown.
+     */
+    public long getMaxLag(String name) {
+        for (EventConsumer consumer : this.consumers) {
+            if (consumer.name.equals(name)) {
+                return consumer.maxLag;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return a one line summary of the bus and its consumers, suitable for the logs.
+     */
+    public String summary() {
+        StringBuilder summary = new StringBuilder(String.format("events published=%d dropped=%d producerWaits=%d",
+                this.getPublishedEvents(), this.getDroppedEvents(), this.getProducerWaits()));
+        for (EventConsumer consumer : this.consumers) {
+            summary.append(String.format(" %s(lag=%d maxLag=%d handled=%d batches=%d failed=%d)",
+                    consumer.name, this.cursor.get() - consumer.sequence.get(), consumer.maxLag,
+                    consumer.handledEvents, consumer.batches, consumer.failedEvents));
+        }
+        return summary.toString();
+    }
+
+    private long minimumConsumerSequence() {
+        long minimum = this.cursor.get();
+        for (EventConsumer consumer : this.consumers) {
+            minimum = Math.min(minimum, consumer.sequence.get());
+        }
+        return minimum;
+    }
+
+    private void signalConsumers() {
+        this.waitLock.lock();
+        try {
+            this.eventPublished.signalAll();
+        } finally {
+            this.waitLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the given sequence is published, or the bus is stopped.
+     *
+     * @return the sequence of the last event published, lower than the given one if the bus was stopped.
+     */
+    private long waitFor(long sequence) throws InterruptedException {
+        long available;
+        int tries = 0;
+
+        while ((available = this.cursor.get()) < sequence && this.running) {
+            tries++;
+            switch (this.waitStrategy) {
+                case BUSY_SPIN -> Thread.onSpinWait();
+                case YIELDING -> {
+                    if (tries < SPIN_TRIES) {
+                        Thread.onSpinWait();
+                    } else {
+                        Thread.yield();
+                    }
+                }
+                case SLEEPING -> {
+                    if (tries < SPIN_TRIES) {
+                        Thread.onSpinWait();
+                    } else if (tries < SPIN_TRIES * 2) {
+                        Thread.yield();
+                    } else {
+                        LockSupport.parkNanos(SLEEP_NANOS);
+                    }
+                }
+                case BLOCKING -> {
+                    this.waitLock.lock();
+                    try {
+                        // Checked again under the lock, a publisher signals only after moving the cursor
+                        while (this.cursor.get() < sequence && this.running) {
+                            this.eventPublished.await();
+                        }
+                    } finally {
+                        this.waitLock.unlock();
+                    }
+                }
+            }
+        }
+        return available;
+    }
+
+    private class EventConsumer implements Runnable {
+
+        private final String name;
+        private final OrderEventHandler handler;
+        private final Thread thread;
+        // Sequence of the last event handled, the slots up to it can be reused
+        private final AtomicLong sequence;
+
+        // Only written by the consumer thread
+        private volatile long handledEvents;
+        private volatile long batches;
+        private volatile long failedEvents;
+        private volatile long maxLag;
+
+        private EventConsumer(String name, OrderEventHandler handler, long sequence) {
+            this.name = name;
+            this.handler = handler;
+            this.sequence = new AtomicLong(sequence);
+            this.thread = new Thread(this, "order-events-" + name);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            long next = this.sequence.get() + 1;
+
+            while (true) {
+                long available;
+                try {
+                    available = OrderEventBus.this.waitFor(next);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (available < next) {
+                    // The bus is stopped and every event was handled
+                    return;
+                }
+
+                for (long sequence = next; sequence <= available; sequence++) {
+                    try {
+                        this.handler.onEvent(OrderEventBus.this.slots[(int) sequence & OrderEventBus.this.mask], sequence, sequence == available);
+                    } catch (Exception e) {
+                        this.failedEvents++;
+                        SimpleLogger.error("An error occured while trying to handle an order event in " + this.name + ": " + e.getMessage());
+                    }
+                }
+                this.sequence.set(available);
+
+                this.handledEvents += available - next + 1;
+                this.batches++;
+                this.maxLag = Math.max(this.maxLag, available - next + 1);
+                next = available + 1;
+            }
+        }
+    }
+}
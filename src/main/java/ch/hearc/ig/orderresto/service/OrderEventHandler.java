@@ -0,0 +1,19 @@
+package ch.hearc.ig.orderresto.service;
+
+/**
+ * Reacts to the changes made to orders, see {@link OrderEventBus#subscribe(String, OrderEventHandler)}.
+ * A handler is called by the thread of its consumer only, it does not need to be thread-safe.
+ */
+@FunctionalInterface
+public interface OrderEventHandler {
+
+    /**
+     * Handles one event. The events published since the previous call are handled as a batch, the last one of
+     * the batch being flagged, e.g. to write what was gathered over the batch at once.
+     *
+     * @param event the event, its slot is reused once the batch is handled.
+     * @param sequence the position of the event on the bus, increasing by one per event.
+     * @param endOfBatch true for the last event currently available.
+     */
+    void onEvent(OrderEvent event, long sequence, boolean endOfBatch) throws Exception;
+}
@@ -0,0 +1,291 @@
+package ch.hearc.ig.orderresto.service;
+
+import ch.hearc.ig.orderresto.business.Order;
+import ch.hearc.ig.orderresto.utils.SimpleLogger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Intake queue placed in front of {@link ProductOrderService} for order placement. Submitting an order only
+ * enqueues it and returns a future, completed once the order is committed. A single writer thread takes the
+ * pending orders by groups and commits each group in one transaction (group commit), so that a burst of orders
+ * costs a few transactions instead of one per order.
+ * The queue is bounded: when it is full, submissions wait for a while and are then rejected (backpressure).
+ *
+ * Settings, as system properties: "orderresto.intake.capacity" (pending orders, default 1000),
+ * "orderresto.intake.maxGroupSize" (orders per transaction, default 100) and
+ * "orderresto.intake.offerTimeoutMillis" (wait when the queue is full, default 2000).
+ */
+public class OrderIntakeQueue {
+
+    private static final OrderIntakeQueue instance = new OrderIntakeQueue(
+            Integer.getInteger("orderresto.intake.capacity", 1_000),
+            Integer.getInteger("orderresto.intake.maxGroupSize", 100),
+            Long.getLong("orderresto.intake.offerTimeoutMillis", 2_000)
+    );
+
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+
+    private final BlockingQueue<PendingOrder> pendingOrders;
+    private final int maxGroupSize;
+    private final long offerTimeoutMillis;
+    private final ProductOrderService productOrderService = ProductOrderService.getInstance();
+
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final LongAdder committedOrders = new LongAdder();
+    private final LongAdder committedGroups = new LongAdder();
+    private final LongAdder failedGroups = new LongAdder();
+    private final LongAdder duplicateOrders = new LongAdder();
+    private final LongAdder failedOrders = new LongAdder();
+    private final LongAdder rejectedOrders = new LongAdder();
+    private final LongAdder commitNanos = new LongAdder();
+    private final AtomicLong maxCommitNanos = new AtomicLong();
+    private final AtomicLong maxQueueDepth = new AtomicLong();
+
+    private OrderIntakeQueue(int capacity, int maxGroupSize, long offerTimeoutMillis) {
+        this.pendingOrders = new ArrayBlockingQueue<>(capacity);
+        this.maxGroupSize = maxGroupSize;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+
+        this.writer = new Thread(this::writeOrders, "order-intake-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public static OrderIntakeQueue getInstance() {
+        return instance;
+    }
+
+    /**
+     * Submits an order for placement.
+     *
+     * @param order the order to be added to its restaurant.
+     * @return a future completed with the id of the order once it is committed (or with the id of the order first
+     * placed with the same idempotency key), or completed exceptionally if the order could not be added or the
+     * queue stayed full.
+     */
+    public CompletableFuture<Long> submit(Order order) {
+        PendingOrder pendingOrder = new PendingOrder(order);
+
+        try {
+            if (!this.running || !this.pendingOrders.offer(pendingOrder, this.offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                this.rejectedOrders.increment();
+                pendingOrder.acknowledgement.completeExceptionally(new RejectedExecutionException("The order intake queue is full or stopped"));
+            } else if (!this.running && this.pendingOrders.remove(pendingOrder)) {
+                // The queue was stopped while the order was enqueued, after the writer and shutdown were done with
+                // it. An order no longer in the queue was taken by either of them, which completes it
+                this.rejectedOrders.increment();
+                pendingOrder.acknowledgement.completeExceptionally(new RejectedExecutionException("The order intake queue is stopped"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pendingOrder.acknowledgement.completeExceptionally(e);
+        }
+
+        this.maxQueueDepth.accumulateAndGet(this.pendingOrders.size(), Math::max);
+
+        return pendingOrder.acknowledgement;
+    }
+
+    /**
+     * Stops accepting orders, commits the ones still pending and stops the writer.
+     */
+    public void shutdown() {
+        this.running = false;
+        try {
+            this.writer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Orders enqueued while the writer was stopping are not committed
+        List<PendingOrder> leftovers = new ArrayList<>();
+        this.pendingOrders.drainTo(leftovers);
+        leftovers.forEach(pendingOrder -> pendingOrder.acknowledgement.completeExceptionally(new RejectedExecutionException("The order intake queue is stopped")));
+
+        SimpleLogger.info("Order intake stopped, " + this.summary());
+    }
+
+    public int getQueueDepth() {
+        return this.pendingOrders.size();
+    }
+
+    public long getMaxQueueDepth() {
+        return this.maxQueueDepth.get();
+    }
+
+    public long getCommittedOrders() {
+        return this.committedOrders.sum();
+    }
+
+    public long getCommittedGroups() {
+        return this.committedGroups.sum();
+    }
+
+    /**
+     * @return the number of groups that could not be committed as a whole, their orders being committed one by one.
+     */
+    public long getFailedGroups() {
+        return this.failedGroups.sum();
+    }
+
+    /**
+     * @return the number of retried submissions answered with the order of a previous one, without any transaction.
+     */
+    public long getDuplicateOrders() {
+        return this.duplicateOrders.sum();
+    }
+
+    public long getFailedOrders() {
+        return this.failedOrders.sum();
+    }
+
+    public long getRejectedOrders() {
+        return this.rejectedOrders.sum();
+    }
+
+    /**
+     * @return the mean time taken to commit a group, in milliseconds. Groups that failed are not counted.
+     */
+    public double getMeanCommitMillis() {
+        long groups = this.committedGroups.sum();
+        return groups == 0 ? 0 : this.commitNanos.sum() / 1_000_000.0 / groups;
+    }
+
+    /**
+     * @return the longest time taken to commit a group, in milliseconds.
+     */
+    public double getMaxCommitMillis() {
+        return this.maxCommitNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * @return a one line summary of the intake, suitable for the logs.
+     */
+    public String summary() {
+        return String.format(
+                "intake depth=%d maxDepth=%d committed=%d groups=%d failedGroups=%d duplicates=%d failed=%d rejected=%d commit(mean=%.1fms max=%.1fms)",
+                this.getQueueDepth(),
+                this.getMaxQueueDepth(),
+                this.getCommittedOrders(),
+                this.getCommittedGroups(),
+                this.getFailedGroups(),
+                this.getDuplicateOrders(),
+                this.getFailedOrders(),
+                this.getRejectedOrders(),
+                this.getMeanCommitMillis(),
+                this.getMaxCommitMillis()
+        );
+    }
+
+    private void writeOrders() {
+        List<PendingOrder> group = new ArrayList<>(this.maxGroupSize);
+
+        while (this.running || !this.pendingOrders.isEmpty()) {
+            try {
+                PendingOrder first = this.pendingOrders.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                this.pendingOrders.drainTo(group, this.maxGroupSize - 1);
+
+                this.commitGroup(group);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                SimpleLogger.error("An error occured while trying to commit a group of orders: " + e.getMessage());
+                group.forEach(pendingOrder -> pendingOrder.acknowledgement.completeExceptionally(e));
+            } finally {
+                group.clear();
+            }
+        }
+    }
+
+    private void commitGroup(List<PendingOrder> group) {
+        // Retried submissions are taken out of the group, as a duplicate would make it fail: those of orders placed
+        // recently are answered right away, those of orders in the group get the answer of their first submission
+        Map<String, PendingOrder> submissionsByKey = new HashMap<>();
+        group.removeIf(pendingOrder -> {
+            String idempotencyKey = pendingOrder.order.getIdempotencyKey();
+            if (idempotencyKey == null) {
+                return false;
+            }
+            Long placedOrderId = this.productOrderService.getPlacedOrderId(idempotencyKey);
+            if (placedOrderId != null) {
+                this.duplicateOrders.increment();
+                pendingOrder.acknowledgement.complete(placedOrderId);
+                return true;
+            }
+            PendingOrder firstSubmission = submissionsByKey.putIfAbsent(idempotencyKey, pendingOrder);
+            if (firstSubmission == null) {
+                return false;
+            }
+            this.duplicateOrders.increment();
+            firstSubmission.acknowledgement.whenComplete((orderId, error) -> {
+                if (error != null) {
+                    pendingOrder.acknowledgement.completeExceptionally(error);
+                } else {
+                    pendingOrder.acknowledgement.complete(orderId);
+                }
+            });
+            return true;
+        });
+        if (group.isEmpty()) {
+            return;
+        }
+
+        List<Order> orders = new ArrayList<>(group.size());
+        group.forEach(pendingOrder -> orders.add(pendingOrder.order));
+
+        long start = System.nanoTime();
+        boolean committed = this.productOrderService.addOrdersToRestaurant(orders);
+        long elapsed = System.nanoTime() - start;
+
+        if (committed) {
+            this.committedGroups.increment();
+            this.commitNanos.add(elapsed);
+            this.maxCommitNanos.accumulateAndGet(elapsed, Math::max);
+            this.committedOrders.add(group.size());
+            group.forEach(pendingOrder -> pendingOrder.acknowledgement.complete(pendingOrder.order.getId()));
+            return;
+        }
+
+        // One order made the whole group fail, the orders are committed one by one to isolate it. A duplicate
+        // submission then gets the id of the order already placed
+        this.failedGroups.increment();
+        for (PendingOrder pendingOrder : group) {
+            Long orderId = this.productOrderService.placeOrder(pendingOrder.order);
+            if (orderId != null) {
+                this.committedOrders.increment();
+                pendingOrder.acknowledgement.complete(orderId);
+            } else {
+                this.failedOrders.increment();
+                pendingOrder.acknowledgement.completeExceptionally(new IllegalStateException("The order could not be added to the restaurant"));
+            }
+        }
+    }
+
+    private static class PendingOrder {
+
+        private final Order order;
+        private final CompletableFuture<Long> acknowledgement = new CompletableFuture<>();
+
+        private PendingOrder(Order order) {
+            this.order = order;
+        }
+    }
+}
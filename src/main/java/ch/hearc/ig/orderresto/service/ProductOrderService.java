@@ -1,29 +1,82 @@
 package ch.hearc.ig.orderresto.service;
 
+import ch.hearc.ig.orderresto.business.ArchivedOrder;
+import ch.hearc.ig.orderresto.business.Customer;
 import ch.hearc.ig.orderresto.business.Order;
 import ch.hearc.ig.orderresto.business.Product;
+import ch.hearc.ig.orderresto.business.ProductSales;
+import ch.hearc.ig.orderresto.business.Restaurant;
 import ch.hearc.ig.orderresto.persistence.utils.HibernateUtil;
+import ch.hearc.ig.orderresto.utils.ExpiringCache;
+import ch.hearc.ig.orderresto.utils.LongCounter;
 import ch.hearc.ig.orderresto.utils.SimpleLogger;
 import jakarta.persistence.EntityManager;
-import jakarta.persistence.EntityTransaction;
-
+import jakarta.persistence.OptimisticLockException;
+import org.hibernate.Session;
+import org.hibernate.jpa.SpecHints;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 /**
  * Service class that handles operations related to orders and products, including adding, modifying,
  * removing, and retrieving orders and products in the context of a restaurant. It interacts with Hibernate
  * to manage the relationships between orders and products.
+ * Every order added, modified or removed is announced on the {@link OrderEventBus} once committed.
+ *
+ * Settings of the idempotency cache, as system properties: "orderresto.idempotency.cacheSize" (orders
+ * remembered, default 10000) and "orderresto.idempotency.ttlMinutes" (time they are remembered, default 60).
  */
 public class ProductOrderService {
 
-    private static ProductOrderService instance;
+    /**
+     * Time during which an idempotency key is guaranteed to be recognized, from the placement of its order. The
+     * key is not kept when the order is archived, {@link OrderArchiver} therefore only archives older orders.
+     */
+    public static final Duration IDEMPOTENCY_KEY_LIFETIME = Duration.ofDays(1);
+
+    // Oracle accepts at most 1000 expressions in an IN list
+    private static final int MAX_IN_LIST_SIZE = 1_000;
+
+    // Scale and largest value of the NUMBER(9, 4) factor applied to the prices of a restaurant
+    private static final int PRICE_FACTOR_SCALE = 4;
+    private static final BigDecimal MAX_PRICE_FACTOR = new BigDecimal("99999.9999");
+
+    // Order lines of a restaurant over a period, live and archived, read through the (FK_RESTO, QUAND) indexes
+    private static final String ORDER_LINES_SQL =
+            "SELECT pc.FK_PRODUIT FROM PRODUIT_COMMANDE pc JOIN COMMANDE c ON c.NUMERO = pc.FK_COMMANDE "
+                    + "WHERE c.FK_RESTO = ? AND c.QUAND >= ? AND c.QUAND < ? "
+                    + "UNION ALL SELECT pc.FK_PRODUIT FROM PRODUIT_COMMANDE_ARCHIVE pc JOIN COMMANDE_ARCHIVE c ON c.NUMERO = pc.FK_COMMANDE "
+                    + "WHERE c.FK_RESTO = ? AND c.QUAND >= ? AND c.QUAND < ?";
+
+    private static final ProductOrderService instance = new ProductOrderService();
+
+    private final RevenueService revenueService = RevenueService.getInstance();
+    private final OrderEventBus orderEventBus = OrderEventBus.getInstance();
+
+    // Ids of the orders recently placed, by idempotency key, so that a retried submission is answered without
+    // querying the database. Only committed orders are remembered
+    private final ExpiringCache<String, Long> placedOrderIds = new ExpiringCache<>(
+            Integer.getInteger("orderresto.idempotency.cacheSize", 10_000),
+            Duration.ofMinutes(Long.getLong("orderresto.idempotency.ttlMinutes", 60)).toMillis()
+    );
 
     private ProductOrderService() {}
 
     public static ProductOrderService getInstance() {
-        if(instance == null) {
-            instance = new ProductOrderService();
-        }
         return instance;
     }
 
@@ -36,13 +89,13 @@ public class ProductOrderService {
     public Set<Product> getProductsFromOrder(Order order) {
         Set<Product> products = null;
 
-        EntityManager entityManager = HibernateUtil.getEntityManager();
-
         try {
-            // Make sure the order is instanced, if not already
-            entityManager.refresh(order);
-
-            products = order.getProducts();
+            // The order may come from a closed unit of work, its products are read from the database
+            products = new LinkedHashSet<>(HibernateUtil.inTransaction(entityManager -> entityManager.createQuery(
+                    "SELECT p FROM Order o JOIN o.products p JOIN FETCH p.restaurant WHERE o.id = :orderId", Product.class)
+                    .setParameter("orderId", order.getId())
+                    .getResultList()
+            ));
 
         } catch (Exception e) {
             SimpleLogger.error("An error occured while trying to get the products of an order: " + e.getMessage() );
@@ -51,34 +104,344 @@ public class ProductOrderService {
         return products;
     }
 
+    /**
+     * Retrieves the full order history of a customer, most recent first. Each order comes with its customer,
+     * restaurant and products (and their restaurant) through the {@link Order#WITH_DETAILS} fetch graph, so the
+     * whole history is read in a single SQL statement however many orders there are.
+     *
+     * @param customer the customer whose orders are to be retrieved.
+     * @return the orders of the customer, or an empty list if an error occurs.
+     */
+    public List<Order> getOrderHistory(Customer customer) {
+
+        try {
+            return this.findOrderHistory(customer);
+        } catch (Exception e) {
+            SimpleLogger.error("An error occured while trying to get the order history of a customer: " + e.getMessage() );
+        }
+
+        return List.of();
+    }
+
+    /**
+     * Retrieves the full order history of a customer, see {@link #getOrderHistory(Customer)}, for the callers that
+     * must tell a failure from an empty history.
+     *
+     * @param customer the customer whose orders are to be retrieved.
+     * @return the orders of the customer.
+     * @throws RuntimeException if the history could not be read.
+     */
+    public List<Order> findOrderHistory(Customer customer) {
+        return HibernateUtil.inTransaction(entityManager -> entityManager.createQuery(
+                "SELECT o FROM Order o WHERE o.customer.id = :customerId ORDER BY o.when DESC", Order.class)
+                .setParameter("customerId", customer.getId())
+                .setHint(SpecHints.HINT_SPEC_FETCH_GRAPH, entityManager.getEntityGraph(Order.WITH_DETAILS))
+                .getResultList()
+        );
+    }
+
+    /**
+     * Retrieves the orders of a customer that were moved to the archive by {@link OrderArchiver}, most recent
+     * first, with their restaurant and products. {@link #getOrderHistory(Customer)} only covers the live orders.
+     *
+     * @param customer the customer whose archived orders are to be retrieved.
+     * @return the archived orders of the customer, or an empty list if an error occurs.
+     */
+    public List<ArchivedOrder> getArchivedOrders(Customer customer) {
+
+        try {
+            return HibernateUtil.inTransaction(entityManager -> entityManager.createQuery(
+                    "SELECT DISTINCT a FROM ArchivedOrder a JOIN FETCH a.restaurant LEFT JOIN FETCH a.products WHERE a.customer.id = :customerId ORDER BY a.when DESC", ArchivedOrder.class)
+                    .setParameter("customerId", customer.getId())
+                    .getResultList()
+            );
+        } catch (Exception e) {
+            SimpleLogger.error("An error occured while trying to get the archived orders of a customer: " + e.getMessage() );
+        }
+
+        return List.of();
+    }
+
+    /**
+     * Ranks the products of a restaurant by the number of orders they appeared in over a period, live and archived
+     * orders included. The order lines are streamed from the database through a forward-only cursor and counted
+     * per product in primitive counters, without loading any order or product: the memory used depends on the size
+     * of the catalog, not on the number of order lines.
+     *
+     * @param restaurant the restaurant whose best sellers are to be retrieved.
+     * @param from the start of the period, included.
+     * @param to the end of the period, excluded.
+     * @param limit the maximum number of products to retrieve.
+     * @return the best selling products, from the most ordered down, or an empty list if an error occurs.
+     */
+    public List<ProductSales> getBestSellers(Restaurant restaurant, LocalDateTime from, LocalDateTime to, int limit) {
+
+        try {
+            return HibernateUtil.inTransaction(entityManager -> {
+                LongCounter salesByProduct = entityManager.unwrap(Session.class).doReturningWork(connection -> {
+                    LongCounter counter = new LongCounter(256);
+                    try (PreparedStatement statement = connection.prepareStatement(ORDER_LINES_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                        for (int offset = 0; offset <= 3; offset += 3) {
+                            statement.setLong(offset + 1, restaurant.getId());
+                            statement.setTimestamp(offset + 2, Timestamp.valueOf(from));
+                            statement.setTimestamp(offset + 3, Timestamp.valueOf(to));
+                        }
+                        statement.setFetchSize(HibernateUtil.DEFAULT_FETCH_SIZE);
+
+                        try (ResultSet orderLines = statement.executeQuery()) {
+                            while (orderLines.next()) {
+                                counter.increment(orderLines.getLong(1));
+                            }
+                        }
+                    }
+                    return counter;
+                });
+
+                long[] productIds = salesByProduct.topKeys(limit);
+                if (productIds.length == 0) {
+                    return List.<ProductSales>of();
+                }
+
+                // Only the names of the selected products are read, as scalar values, by up to 1000 products
+                List<Long> ids = new ArrayList<>(productIds.length);
+                for (long productId : productIds) {
+                    ids.add(productId);
+                }
+                Map<Long, String> productNames = new HashMap<>(ids.size() * 2);
+                for (int first = 0; first < ids.size(); first += MAX_IN_LIST_SIZE) {
+                    entityManager.createQuery(
+                            "SELECT p.id, p.name FROM Product p WHERE p.id IN :ids", Object[].class)
+                            .setParameter("ids", ids.subList(first, Math.min(first + MAX_IN_LIST_SIZE, ids.size())))
+                            .getResultStream()
+                            .forEach(row -> productNames.put((Long) row[0], (String) row[1]));
+                }
+
+                List<ProductSales> bestSellers = new ArrayList<>(productIds.length);
+                for (long productId : productIds) {
+                    bestSellers.add(new ProductSales(productId, productNames.get(productId), salesByProduct.get(productId)));
+                }
+                return bestSellers;
+            });
+        } catch (Exception e) {
+            SimpleLogger.error("An error occured while trying to get the best sellers of a restaurant: " + e.getMessage() );
+        }
+
+        return List.of();
+    }
+
+    /**
+     * Retrieves the orders of a restaurant from the largest amount down, reading only the COMMANDE table through
+     * its (FK_RESTO, MONTANT_TOTAL) index.
+     *
+     * @param restaurant the restaurant whose orders are to be retrieved.
+     * @param minimumAmount the smallest total amount of the orders to retrieve.
+     * @param limit the maximum number of orders to retrieve.
+     * @return the orders, or an empty list if an error occurs.
+     */
+    public List<Order> getLargestOrders(Restaurant restaurant, BigDecimal minimumAmount, int limit) {
+
+        try {
+            return HibernateUtil.inTransaction(entityManager -> entityManager.createQuery(
+                    "SELECT o FROM Order o WHERE o.restaurant.id = :restaurantId AND o.totalAmount >= :minimumAmount ORDER BY o.totalAmount DESC", Order.class)
+                    .setParameter("restaurantId", restaurant.getId())
+                    .setParameter("minimumAmount", minimumAmount)
+                    .setMaxResults(limit)
+                    .getResultList()
+            );
+        } catch (Exception e) {
+            SimpleLogger.error("An error occured while trying to get the largest orders of a restaurant: " + e.getMessage() );
+        }
+
+        return List.of();
+    }
+
     /**
      * Adds a new order to the restaurant, including associating products with the order.
+     * The total amount of the order is computed from its products and stored with it, and the order is counted
+     * in the daily revenue of its restaurant in the same transaction.
+     * An order carrying an idempotency key already used is not added again, see {@link #placeOrder(Order)}.
      *
      * @param order the order to be added to the restaurant.
-     * @return true if the order was successfully added, false otherwise.
+     * @return true if the order was successfully added, or had already been, false otherwise.
      */
     public boolean addOrderToRestaurant(Order order) {
+        return this.placeOrder(order) != null;
+    }
+
+    /**
+     * Places an order submitted by a client, at most once per idempotency key: when the client retries the
+     * submission (e.g. after a timeout), the order placed by the first attempt is returned instead of being added
+     * again. Recently placed orders are found in a bounded in-memory cache without any query, older ones through
+     * the unique index on the key, which also rejects concurrent submissions of the same order. A key is only
+     * recognized for {@link #IDEMPOTENCY_KEY_LIFETIME}: once its order is archived, the same key places a new order.
+     * Inside an enclosing unit of work, the order is only written when that unit commits, too late to catch a
+     * duplicate here: the key is then looked up before the order is added, and a concurrent submission of the
+     * same key makes the enclosing unit of work fail to commit.
+     *
+     * @param order the order to be added to the restaurant, with the idempotency key chosen by the client if any.
+     * @return the id of the order, or of the order first placed with the same idempotency key, or null if an
+     * error occurs.
+     */
+    public Long placeOrder(Order order) {
 
-        EntityManager entityManager = HibernateUtil.getEntityManager();
-        EntityTransaction transaction = entityManager.getTransaction();
+        String idempotencyKey = order.getIdempotencyKey();
+        Long placedOrderId = idempotencyKey == null ? null : this.placedOrderIds.get(idempotencyKey);
+        if (placedOrderId != null) {
+            return placedOrderId;
+        }
+
+        boolean joined = HibernateUtil.isInUnitOfWork();
 
         try {
-            transaction.begin();
+            order.recalculateTotalAmount();
 
-            entityManager.persist(order);
+            return HibernateUtil.inTransaction(entityManager -> {
+                Long existingOrderId = idempotencyKey == null || !joined ? null : findOrderId(entityManager, idempotencyKey);
+                if (existingOrderId != null) {
+                    HibernateUtil.afterCommit(() -> this.placedOrderIds.put(idempotencyKey, existingOrderId));
+                    return existingOrderId;
+                }
 
-            transaction.commit();
+                entityManager.persist(order);
 
-            return true;
+                RevenueChanges revenueChanges = new RevenueChanges();
+                revenueChanges.add(order);
+                this.revenueService.applyChanges(entityManager, revenueChanges);
+
+                this.afterOrderPlaced(order);
+                return order.getId();
+            });
         } catch (Exception e) {
-            transaction.rollback();
+            // Nothing was written, the order is made new again so that it can be added once more
+            order.setId(null);
+            order.setVersion(null);
+
+            // The insert failed here, the key may have been used by a submission the cache does not know of, its
+            // order is then returned. Inside an enclosing unit of work, the failure is that of the enclosing one
+            placedOrderId = idempotencyKey == null || joined ? null : this.findOrderId(idempotencyKey);
+            if (placedOrderId != null) {
+                this.placedOrderIds.put(idempotencyKey, placedOrderId);
+                return placedOrderId;
+            }
             SimpleLogger.error("An error occured while trying to add an order to the restaurant: " + e.getMessage());
-            e.printStackTrace();
+        }
+
+        return null;
+    }
+
+    /**
+     * Looks up an order placed recently with an idempotency key, in memory only.
+     *
+     * @param idempotencyKey the idempotency key of the order.
+     * @return the id of the order, or null if it is not cached.
+     */
+    public Long getPlacedOrderId(String idempotencyKey) {
+        return this.placedOrderIds.get(idempotencyKey);
+    }
+
+    private Long findOrderId(String idempotencyKey) {
+
+        try {
+            return HibernateUtil.inTransaction(entityManager -> findOrderId(entityManager, idempotencyKey));
+        } catch (Exception e) {
+            SimpleLogger.error("An error occured while trying to find an order by its idempotency key: " + e.getMessage() );
+        }
+
+        return null;
+    }
+
+    private static Long findOrderId(EntityManager entityManager, String idempotencyKey) {
+        return entityManager.createQuery("SELECT o.id FROM Order o WHERE o.idempotencyKey = :idempotencyKey", Long.class)
+                .setParameter("idempotencyKey", idempotencyKey)
+                .getResultStream()
+                .findFirst()
+                .orElse(null);
+    }
+
+    // The menu must be built again from the committed catalog, so it is discarded once the enclosing unit of work,
+    // if any, is committed
+    private void invalidateMenu(Long restaurantId) {
+        HibernateUtil.afterCommit(() -> MenuService.getInstance().invalidate(restaurantId));
+    }
+
+    // Once committed, the order is remembered by its idempotency key and announced to the other components
+    private void afterOrderPlaced(Order order) {
+        HibernateUtil.afterCommit(() -> {
+            if (order.getIdempotencyKey() != null) {
+                this.placedOrderIds.put(order.getIdempotencyKey(), order.getId());
+            }
+            this.orderEventBus.publish(OrderEvent.Type.PLACED, order);
+        });
+    }
+
+    /**
+     * Adds many orders in a single transaction. The inserts are sent in JDBC batches of
+     * {@link HibernateUtil#getJdbcBatchSize()} statements, and the persistence context is flushed and cleared
+     * after each batch so that its size does not grow with the number of orders. The throughput of each batch is logged.
+     * Inside an enclosing unit of work, the persistence context is that of the caller: it is only flushed, so that
+     * the entities the caller loaded stay managed, and it grows with the number of orders.
+     * Either all the orders are added, or none: if one of them carries an idempotency key already used, none is.
+     *
+     * @param orders the orders to be added.
+     * @return true if the orders were successfully added, false otherwise.
+     */
+    public boolean addOrdersToRestaurant(Collection<Order> orders) {
+
+        int batchSize = HibernateUtil.getJdbcBatchSize();
+        // Clearing a persistence context shared with the caller would detach the entities it loaded
+        boolean joined = HibernateUtil.isInUnitOfWork();
+
+        try {
+            HibernateUtil.runInTransaction(entityManager -> {
+                int batchNumber = 0;
+                int ordersInBatch = 0;
+                long batchStart = System.nanoTime();
+                RevenueChanges revenueChanges = new RevenueChanges();
+
+                for (Order order : orders) {
+                    order.recalculateTotalAmount();
+                    entityManager.persist(order);
+                    revenueChanges.add(order);
+                    this.afterOrderPlaced(order);
+
+                    if (++ordersInBatch == batchSize) {
+                        this.flushOrderBatch(entityManager, !joined, ++batchNumber, ordersInBatch, batchStart);
+                        ordersInBatch = 0;
+                        batchStart = System.nanoTime();
+                    }
+                }
+
+                if (ordersInBatch > 0) {
+                    this.flushOrderBatch(entityManager, !joined, ++batchNumber, ordersInBatch, batchStart);
+                }
+
+                this.revenueService.applyChanges(entityManager, revenueChanges);
+            });
+
+            return true;
+        } catch (Exception e) {
+            // Nothing was written, the orders are made new again so that they can be added once more
+            orders.forEach(order -> {
+                order.setId(null);
+                order.setVersion(null);
+            });
+            SimpleLogger.error("An error occured while trying to add orders to the restaurants: " + e.getMessage());
         }
 
         return false;
     }
 
+    private void flushOrderBatch(EntityManager entityManager, boolean clear, int batchNumber, int orderCount, long batchStart) {
+        entityManager.flush();
+        if (clear) {
+            entityManager.clear();
+        }
+
+        double elapsedMillis = (System.nanoTime() - batchStart) / 1_000_000.0;
+        SimpleLogger.info(String.format("Order batch %d: %d orders written in %.1f ms (%.0f orders/s)",
+                batchNumber, orderCount, elapsedMillis, orderCount / (elapsedMillis / 1000.0)));
+    }
+
     /**
      * Adds a new product to the restaurant's inventory.
      *
@@ -87,19 +450,13 @@ public class ProductOrderService {
      */
     public boolean addProductToRestaurant(Product product) {
 
-        EntityManager entityManager = HibernateUtil.getEntityManager();
-        EntityTransaction transaction = entityManager.getTransaction();
-
         try {
-            transaction.begin();
-
-            entityManager.persist(product);
+            HibernateUtil.runInTransaction(entityManager -> entityManager.persist(product));
 
-            transaction.commit();
+            this.invalidateMenu(product.getRestaurant().getId());
 
             return true;
         } catch (Exception e) {
-            transaction.rollback();
             SimpleLogger.error("An error occured while trying to add a product to the restaurant: " + e.getMessage() );
         }
 
@@ -107,27 +464,40 @@ public class ProductOrderService {
     }
 
     /**
-     * Modifies the details of an existing order.
+     * Modifies the details of an existing order, its stored total amount is updated to match its products.
      *
      * @param order the order to be modified.
      * @return true if the order was successfully modified, false otherwise.
      */
     public boolean modifyOrder(Order order) {
 
-        EntityManager entityManager = HibernateUtil.getEntityManager();
-        EntityTransaction transaction = entityManager.getTransaction();
-
         try {
-            transaction.begin();
-
-            entityManager.merge(order);
-
-            transaction.commit();
+            // The total is computed on the managed order, whose products can be loaded if the given one lacks them
+            Order managedOrder = HibernateUtil.inTransaction(entityManager -> {
+                // The order is discounted from the rollups as it is stored, and counted again as modified
+                RevenueChanges revenueChanges = new RevenueChanges();
+                revenueChanges.subtract(entityManager.find(Order.class, order.getId()));
+
+                Order mergedOrder = entityManager.merge(order);
+                mergedOrder.recalculateTotalAmount();
+                revenueChanges.add(mergedOrder);
+
+                this.revenueService.applyChanges(entityManager, revenueChanges);
+                entityManager.flush();
+                HibernateUtil.afterCommit(() -> this.orderEventBus.publish(OrderEvent.Type.MODIFIED, mergedOrder));
+                return mergedOrder;
+            });
+            // The given order carries the new total and version, so that it can be modified again
+            order.setTotalAmount(managedOrder.getTotalAmount());
+            order.setVersion(managedOrder.getVersion());
 
             return true;
         } catch (Exception e) {
-            transaction.rollback();
-            SimpleLogger.error("An error occured while trying to modify an order: " + e.getMessage() );
+            if (HibernateUtil.isOptimisticLockFailure(e)) {
+                SimpleLogger.warning("The order was modified by someone else in the meantime, reload it before modifying it again");
+            } else {
+                SimpleLogger.error("An error occured while trying to modify an order: " + e.getMessage() );
+            }
         }
 
         return false;
@@ -141,47 +511,183 @@ public class ProductOrderService {
      */
     public boolean modifyProduct(Product product) {
 
-        EntityManager entityManager = HibernateUtil.getEntityManager();
-        EntityTransaction transaction = entityManager.getTransaction();
-
         try {
-            transaction.begin();
+            Long version = HibernateUtil.inTransaction(entityManager -> {
+                Product managedProduct = entityManager.merge(product);
+                entityManager.flush();
+                return managedProduct.getVersion();
+            });
+            // The given product carries the new version, so that it can be modified again
+            product.setVersion(version);
+
+            this.invalidateMenu(product.getRestaurant().getId());
+
+            return true;
+        } catch (Exception e) {
+            if (HibernateUtil.isOptimisticLockFailure(e)) {
+                SimpleLogger.warning("The product was modified by someone else in the meantime, reload it before modifying it again");
+            } else {
+                SimpleLogger.error("An error occured while trying to modify a product: " + e.getMessage() );
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Changes the unit price of a product. Unlike {@link #modifyProduct(Product)}, the price is set on the current
+     * state of the product, so a concurrent modification of the product does not make it fail: the change is
+     * retried on the new version (see {@link HibernateUtil#inTransactionWithRetry}).
+     *
+     * @param product the product whose price changes, it receives the new price and version.
+     * @param unitPrice the new unit price.
+     * @return true if the price was successfully changed, false otherwise.
+     */
+    public boolean changeProductPrice(Product product, BigDecimal unitPrice) {
 
-            entityManager.merge(product);
+        try {
+            Long version = HibernateUtil.inTransactionWithRetry(entityManager -> {
+                Product managedProduct = entityManager.find(Product.class, product.getId());
+                managedProduct.setUnitPrice(unitPrice);
+                entityManager.flush();
+                return managedProduct.getVersion();
+            });
+            product.setUnitPrice(unitPrice);
+            product.setVersion(version);
 
-            transaction.commit();
+            this.invalidateMenu(product.getRestaurant().getId());
 
             return true;
         } catch (Exception e) {
-            transaction.rollback();
-            SimpleLogger.error("An error occured while trying to modify a product: " + e.getMessage() );
+            if (HibernateUtil.isOptimisticLockFailure(e)) {
+                SimpleLogger.warning("The product kept being modified by someone else, its price was not changed");
+            } else {
+                SimpleLogger.error("An error occured while trying to change the price of a product: " + e.getMessage() );
+            }
         }
 
         return false;
     }
 
+    /**
+     * Raises (or lowers, with a negative percentage) all the unit prices of a restaurant, in a single UPDATE
+     * statement that neither loads nor merges the products. The new prices are rounded to the cent and the
+     * versions of the products are incremented, so that a concurrent modification based on the old price fails.
+     * Hibernate evicts the products from the second-level cache, and the products already loaded by an enclosing
+     * unit of work are refreshed. The amounts of existing orders keep the prices they were placed at.
+     *
+     * @param restaurant the restaurant whose catalog is repriced.
+     * @param percentage the change of the prices, in percent (e.g. 5 for +5%), with at most two decimals.
+     * @return the number of products repriced, or -1 if an error occurs.
+     * @throws IllegalArgumentException if the percentage would make the prices zero or negative, or does not fit
+     * in the factor applied by the database.
+     */
+    public int raiseRestaurantPrices(Restaurant restaurant, BigDecimal percentage) {
+
+        BigDecimal factor = BigDecimal.ONE.add(percentage.movePointLeft(2));
+        if (factor.signum() <= 0) {
+            throw new IllegalArgumentException("The prices cannot be lowered by 100% or more");
+        }
+        // The factor is applied as a NUMBER(9, 4), which would silently truncate it
+        if (factor.stripTrailingZeros().scale() > PRICE_FACTOR_SCALE || factor.compareTo(MAX_PRICE_FACTOR) > 0) {
+            throw new IllegalArgumentException("The percentage must have at most two decimals and be lower than 9999900: " + percentage);
+        }
+
+        try {
+            int repriced = HibernateUtil.inTransaction(entityManager -> {
+                // The factor is cast explicitly, some databases cannot infer the type of a parameter in arithmetic
+                int updated = entityManager.createQuery(
+                        "UPDATE Product p SET p.unitPrice = ROUND(p.unitPrice * CAST(:factor AS BigDecimal(9, " + PRICE_FACTOR_SCALE + ")), 2), p.version = p.version + 1 WHERE p.restaurant.id = :restaurantId")
+                        .setParameter("factor", factor)
+                        .setParameter("restaurantId", restaurant.getId())
+                        .executeUpdate();
+
+                HibernateUtil.refreshManaged(entityManager, Product.class, product -> product.getRestaurant().getId().equals(restaurant.getId()));
+
+                return updated;
+            });
+            this.invalidateMenu(restaurant.getId());
+
+            return repriced;
+        } catch (Exception e) {
+            SimpleLogger.error("An error occured while trying to raise the prices of a restaurant: " + e.getMessage() );
+        }
+
+        return -1;
+    }
+
+    /**
+     * Sets the same description on many products, with UPDATE statements covering up to 1000 products each
+     * rather than a load and a merge per product. See {@link #raiseRestaurantPrices} for the versions and caches.
+     *
+     * @param productIds the ids of the products to update.
+     * @param description the new description.
+     * @return the number of products updated, or -1 if an error occurs.
+     */
+    public int updateProductDescriptions(Collection<Long> productIds, String description) {
+
+        Set<Long> distinctIds = new HashSet<>(productIds);
+        List<Long> ids = new ArrayList<>(distinctIds);
+
+        try {
+            int updatedProducts = HibernateUtil.inTransaction(entityManager -> {
+                int updated = 0;
+                for (int from = 0; from < ids.size(); from += MAX_IN_LIST_SIZE) {
+                    updated += entityManager.createQuery(
+                            "UPDATE Product p SET p.description = :description, p.version = p.version + 1 WHERE p.id IN :ids")
+                            .setParameter("description", description)
+                            .setParameter("ids", ids.subList(from, Math.min(from + MAX_IN_LIST_SIZE, ids.size())))
+                            .executeUpdate();
+                }
+
+                HibernateUtil.refreshManaged(entityManager, Product.class, product -> distinctIds.contains(product.getId()));
+
+                return updated;
+            });
+            // The products may belong to any restaurant
+            HibernateUtil.afterCommit(() -> MenuService.getInstance().invalidateAll());
+
+            return updatedProducts;
+        } catch (Exception e) {
+            SimpleLogger.error("An error occured while trying to update the descriptions of products: " + e.getMessage() );
+        }
+
+        return -1;
+    }
+
     /**
      * Removes an order from the restaurant, including its associated product-order relationships.
+     * The order is discounted from the daily revenue of its restaurant.
      *
      * @param order the order to be removed.
      * @return true if the order was successfully removed, false otherwise.
      */
     public boolean removeOrder(Order order) {
 
-        EntityManager entityManager = HibernateUtil.getEntityManager();
-        EntityTransaction transaction = entityManager.getTransaction();
-
         try {
-            transaction.begin();
-
-            entityManager.remove(order);
-
-            transaction.commit();
+            // The order comes from a closed unit of work: the stored one is removed, and discounted from the rollups
+            // as it is stored, provided that it was not changed since the given one was read
+            HibernateUtil.runInTransaction(entityManager -> {
+                Order managedOrder = entityManager.find(Order.class, order.getId());
+                if (managedOrder == null || !Objects.equals(managedOrder.getVersion(), order.getVersion())) {
+                    throw new OptimisticLockException("Order " + order.getId() + " was modified or removed since it was read");
+                }
+                entityManager.remove(managedOrder);
+
+                RevenueChanges revenueChanges = new RevenueChanges();
+                revenueChanges.subtract(managedOrder);
+                this.revenueService.applyChanges(entityManager, revenueChanges);
+
+                HibernateUtil.afterCommit(() -> this.orderEventBus.publish(OrderEvent.Type.REMOVED, managedOrder));
+            });
 
             return true;
         } catch (Exception e) {
-            transaction.rollback();
-            SimpleLogger.error("An error occured while trying to remove an order: " + e.getMessage() );
+            if (HibernateUtil.isOptimisticLockFailure(e)) {
+                SimpleLogger.warning("The order was modified by someone else in the meantime, reload it before removing it");
+            } else {
+                SimpleLogger.error("An error occured while trying to remove an order: " + e.getMessage() );
+            }
         }
 
         return false;
@@ -196,20 +702,19 @@ public class ProductOrderService {
      */
     public boolean removeProduct(Product product) {
 
-        EntityManager entityManager = HibernateUtil.getEntityManager();
-        EntityTransaction transaction = entityManager.getTransaction();
-
         try {
-            transaction.begin();
-
-            entityManager.remove(product);
+            // The product comes from a closed unit of work, it has to be attached again before its removal
+            HibernateUtil.runInTransaction(entityManager -> entityManager.remove(entityManager.merge(product)));
 
-            transaction.commit();
+            this.invalidateMenu(product.getRestaurant().getId());
 
             return true;
         } catch (Exception e) {
-            transaction.rollback();
-            SimpleLogger.error("An error occured while trying to remove a product: " + e.getMessage() );
+            if (HibernateUtil.isOptimisticLockFailure(e)) {
+                SimpleLogger.warning("The product was modified by someone else in the meantime, reload it before removing it");
+            } else {
+                SimpleLogger.error("An error occured while trying to remove a product: " + e.getMessage() );
+            }
         }
 
         return false;
@@ -0,0 +1,260 @@
+package ch.hearc.ig.orderresto.service;
+
+import ch.hearc.ig.orderresto.persistence.utils.HibernateUtil;
+import ch.hearc.ig.orderresto.persistence.utils.UnitOfWork;
+import ch.hearc.ig.orderresto.utils.SimpleLogger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs service calls concurrently, each request on its own virtual thread. A request runs in its own
+ * {@link UnitOfWork}: the service calls it makes join that scope, so they share one persistence context and one
+ * transaction, committed when the request completes and rolled back if it throws.
+ * The number of requests running at the same time is limited so that they do not flood the database (and the
+ * connection pool): the others wait for a permit, and are rejected if they waited too long. A request submitted
+ * with {@link #submitStandalone} runs without a unit of work, each of its service calls in its own transaction.
+ *
+ * Settings, as system properties: "orderresto.engine.maxConcurrency" (requests running at the same time,
+ * default 10, the size of the connection pool) and "orderresto.engine.acquireTimeoutMillis" (wait for a
+ * permit, default 5000).
+ */
+public class RequestEngine {
+
+    private static final RequestEngine instance = new RequestEngine(
+            Integer.getInteger("orderresto.engine.maxConcurrency", 10),
+            Long.getLong("orderresto.engine.acquireTimeoutMillis", 5_000)
+    );
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("request-", 0).factory()
+    );
+    private final Semaphore permits;
+    private final int maxConcurrency;
+    private final long acquireTimeoutMillis;
+
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+    private final AtomicInteger maxInFlightRequests = new AtomicInteger();
+    private final LongAdder completedRequests = new LongAdder();
+    private final LongAdder failedRequests = new LongAdder();
+    private final LongAdder rejectedRequests = new LongAdder();
+    private final LongAdder requestNanos = new LongAdder();
+    private final AtomicLong maxRequestNanos = new AtomicLong();
+    private final LongAdder waitNanos = new LongAdder();
+
+    private RequestEngine(int maxConcurrency, long acquireTimeoutMillis) {
+        this.maxConcurrency = maxConcurrency;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.permits = new Semaphore(maxConcurrency, true);
+    }
+
+    public static RequestEngine getInstance() {
+        return instance;
+    }
+
+    /**
+     * Submits a request, to be run on a virtual thread in its own unit of work.
+     *
+     * @param request the service calls to run, its result completes the returned future.
+     * @return a future completed with the result of the request once it is committed, or completed exceptionally
+     * if the request threw, could not be committed or waited too long for a permit.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> request) {
+        return this.submit(request, true);
+    }
+
+    /**
+     * Submits a request, to be run on a virtual thread without a unit of work: each service call it makes runs
+     * and commits in its own transaction, as outside of the engine. For the requests whose service call must
+     * commit by itself, e.g. to detect a duplicate on its own insert, within the admission limit of the engine.
+     *
+     * @param request the service calls to run, its result completes the returned future.
+     * @return a future completed with the result of the request, or completed exceptionally if the request threw
+     * or waited too long for a permit.
+     */
+    public <T> CompletableFuture<T> submitStandalone(Supplier<T> request) {
+        return this.submit(request, false);
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> request, boolean inUnitOfWork) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long submitted = System.nanoTime();
+
+        try {
+            this.executor.execute(() -> this.run(request, inUnitOfWork, submitted, result));
+        } catch (RejectedExecutionException e) {
+            this.rejectedRequests.increment();
+            result.completeExceptionally(e);
+        }
+
+        return result;
+    }
+
+    /**
+     * Submits all the given requests and waits for them to complete.
+     *
+     * @param requests the requests to run concurrently.
+     * @return the futures of the requests, in the same order, all completed.
+     */
+    public <T> List<CompletableFuture<T>> submitAll(List<Supplier<T>> requests) {
+        List<CompletableFuture<T>> results = new ArrayList<>(requests.size());
+        requests.forEach(request -> results.add(this.submit(request)));
+
+        CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+                .exceptionally(e -> null)
+                .join();
+
+        return results;
+    }
+
+    /**
+     * Stops accepting requests and waits for the running ones to complete.
+     */
+    public void shutdown() {
+        this.executor.shutdown();
+        try {
+            if (!this.executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                SimpleLogger.warning("Some requests were still running when the request engine stopped");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        SimpleLogger.info("Request engine stopped, " + this.summary());
+    }
+
+    public int getMaxConcurrency() {
+        return this.maxConcurrency;
+    }
+
+    public int getInFlightRequests() {
+        return this.inFlightRequests.get();
+    }
+
+    public int getMaxInFlightRequests() {
+        return this.maxInFlightRequests.get();
+    }
+
+    /**
+     * @return the number of requests waiting for a permit.
+     */
+    public int getWaitingRequests() {
+        return this.permits.getQueueLength();
+    }
+
+    public long getCompletedRequests() {
+        return this.completedRequests.sum();
+    }
+
+    public long getFailedRequests() {
+        return this.failedRequests.sum();
+    }
+
+    public long getRejectedRequests() {
+        return this.rejectedRequests.sum();
+    }
+
+    /**
+     * @return the mean time taken by a request, from its submission to its commit, in milliseconds.
+     */
+    public double getMeanRequestMillis() {
+        long requests = this.completedRequests.sum() + this.failedRequests.sum();
+        return requests == 0 ? 0 : this.requestNanos.sum() / 1_000_000.0 / requests;
+    }
+
+    /**
+     * @return the longest time taken by a request, in milliseconds.
+     */
+    public double getMaxRequestMillis() {
+        return this.maxRequestNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * @return the mean time spent by a request waiting for a permit, in milliseconds.
+     */
+    public double getMeanWaitMillis() {
+        long requests = this.completedRequests.sum() + this.failedRequests.sum();
+        return requests == 0 ? 0 : this.waitNanos.sum() / 1_000_000.0 / requests;
+    }
+
+    /**
+     * @return a one line summary of the engine, suitable for the logs.
+     */
+    public String summary() {
+        return String.format(
+                "engine inFlight=%d maxInFlight=%d/%d waiting=%d completed=%d failed=%d rejected=%d request(mean=%.1fms max=%.1fms) wait(mean=%.1fms)",
+                this.getInFlightRequests(),
+                this.getMaxInFlightRequests(),
+                this.getMaxConcurrency(),
+                this.getWaitingRequests(),
+                this.getCompletedRequests(),
+                this.getFailedRequests(),
+                this.getRejectedRequests(),
+                this.getMeanRequestMillis(),
+                this.getMaxRequestMillis(),
+                this.getMeanWaitMillis()
+        );
+    }
+
+    private <T> void run(Supplier<T> request, boolean inUnitOfWork, long submitted, CompletableFuture<T> result) {
+        try {
+            if (!this.permits.tryAcquire(this.acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                this.rejectedRequests.increment();
+                result.completeExceptionally(new RejectedExecutionException("The request waited too long to be run"));
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.rejectedRequests.increment();
+            result.completeExceptionally(e);
+            return;
+        }
+
+        long started = System.nanoTime();
+        this.maxInFlightRequests.accumulateAndGet(this.inFlightRequests.incrementAndGet(), Math::max);
+
+        T value = null;
+        Exception failure = null;
+
+        try {
+            if (inUnitOfWork) {
+                try (UnitOfWork unitOfWork = HibernateUtil.openUnitOfWork()) {
+                    value = request.get();
+                    unitOfWork.commit();
+                }
+            } else {
+                value = request.get();
+            }
+        } catch (Exception e) {
+            SimpleLogger.error("An error occured while trying to run a request: " + e.getMessage());
+            failure = e;
+        } finally {
+            this.inFlightRequests.decrementAndGet();
+            this.permits.release();
+
+            long elapsed = System.nanoTime() - submitted;
+            this.requestNanos.add(elapsed);
+            this.maxRequestNanos.accumulateAndGet(elapsed, Math::max);
+            this.waitNanos.add(started - submitted);
+        }
+
+        // Completed once the unit of work is closed, so the caller only ever sees detached entities
+        if (failure == null) {
+            this.completedRequests.increment();
+            result.complete(value);
+        } else {
+            this.failedRequests.increment();
+            result.completeExceptionally(failure);
+        }
+    }
+}
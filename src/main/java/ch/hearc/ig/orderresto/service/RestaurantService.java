@@ -5,12 +5,16 @@ import ch.hearc.ig.orderresto.business.Product;
 import ch.hearc.ig.orderresto.business.Restaurant;
 import ch.hearc.ig.orderresto.persistence.utils.HibernateUtil;
 import ch.hearc.ig.orderresto.utils.SimpleLogger;
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.EntityTransaction;
+import org.hibernate.jpa.HibernateHints;
+import org.hibernate.jpa.SpecHints;
 
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Service class that handles operations related to restaurants, including retrieving, adding, modifying,
@@ -19,13 +23,10 @@ import java.util.Set;
  */
 public class RestaurantService {
 
-    private static RestaurantService instance;
+    private static final RestaurantService instance = new RestaurantService();
     private RestaurantService() {}
 
     public static RestaurantService getInstance() {
-        if(instance == null) {
-            instance = new RestaurantService();
-        }
         return instance;
     }
 
@@ -39,7 +40,12 @@ public class RestaurantService {
     public Set<Order> getOrdersFromRestaurant(Restaurant restaurant) {
 
         try {
-            return restaurant.getOrders();
+            return new LinkedHashSet<>(HibernateUtil.inTransaction(entityManager -> entityManager.createQuery(
+                    "SELECT o FROM Order o WHERE o.restaurant.id = :restaurantId ORDER BY o.when", Order.class)
+                    .setParameter("restaurantId", restaurant.getId())
+                    .setHint(SpecHints.HINT_SPEC_FETCH_GRAPH, entityManager.getEntityGraph(Order.WITH_DETAILS))
+                    .getResultList()
+            ));
         } catch (Exception e) {
             SimpleLogger.error("An error occured while trying to get the orders of a restaurant: " + e.getMessage() );
         }
@@ -56,7 +62,13 @@ public class RestaurantService {
     public Set<Product> getProductsFromRestaurant(Restaurant restaurant) {
 
         try {
-            return restaurant.getProductsCatalog();
+            // Restaurant, its catalog and the products are all served by the second-level cache once warmed up
+            return HibernateUtil.inTransaction(entityManager -> entityManager.find(Restaurant.class, restaurant.getId())
+                    .getProductsCatalog()
+                    .stream()
+                    .sorted(Comparator.comparing(Product::getId))
+                    .collect(Collectors.toCollection(LinkedHashSet::new))
+            );
         } catch (Exception e) {
             SimpleLogger.error("An error occured while trying to get the products of a restaurant: " + e.getMessage() );
         }
@@ -72,10 +84,8 @@ public class RestaurantService {
      */
     public Optional<Restaurant> getRestaurantById(Long id) {
 
-        EntityManager entityManager = HibernateUtil.getEntityManager();
-
         try {
-            return Optional.ofNullable(entityManager.find(Restaurant.class, id));
+            return Optional.ofNullable(HibernateUtil.inTransaction(entityManager -> entityManager.find(Restaurant.class, id)));
         } catch (Exception e) {
             SimpleLogger.error("An error occured while trying to get a restaurant by id: " + e.getMessage() );
         }
@@ -85,15 +95,17 @@ public class RestaurantService {
 
     /**
      * Retrieves a list of all restaurants.
+     * The query result is cached and invalidated by Hibernate whenever the RESTAURANT table is written.
      *
      * @return a list of all restaurants, or an empty list if an error occurs.
      */
     public List<Restaurant> getAllRestaurants() {
 
-        EntityManager entityManager = HibernateUtil.getEntityManager();
-
         try {
-            return entityManager.createQuery("SELECT r FROM Restaurant r", Restaurant.class).getResultList();
+            return HibernateUtil.inTransaction(entityManager -> entityManager.createQuery("SELECT r FROM Restaurant r ORDER BY r.id", Restaurant.class)
+                    .setHint(HibernateHints.HINT_CACHEABLE, true)
+                    .getResultList()
+            );
         } catch (Exception e) {
             SimpleLogger.error("An error occured while trying to get all restaurants: " + e.getMessage() );
         }
@@ -101,6 +113,92 @@ public class RestaurantService {
         return List.of();
     }
 
+    /**
+     * Retrieves one page of restaurants ordered by id, using keyset pagination.
+     *
+     * @param afterId the id of the last restaurant of the previous page, or null for the first page.
+     * @param limit the maximum number of restaurants in the page.
+     * @return the restaurants of the page, or an empty list if there are none left or an error occurs.
+     */
+    public List<Restaurant> getRestaurantsPage(Long afterId, int limit) {
+
+        try {
+            return HibernateUtil.inTransaction(entityManager -> entityManager.createQuery(
+                    "SELECT r FROM Restaurant r WHERE r.id > :afterId ORDER BY r.id", Restaurant.class)
+                    .setParameter("afterId", afterId == null ? 0L : afterId)
+                    .setMaxResults(limit)
+                    .getResultList()
+            );
+        } catch (Exception e) {
+            SimpleLogger.error("An error occured while trying to get a page of restaurants: " + e.getMessage() );
+        }
+
+        return List.of();
+    }
+
+    /**
+     * Streams all restaurants ordered by id, detaching them as they are read. The stream must be closed once consumed.
+     *
+     * @return the stream of restaurants, or an empty stream if an error occurs.
+     */
+    public Stream<Restaurant> streamAllRestaurants() {
+
+        try {
+            return HibernateUtil.streamDetached(entityManager -> entityManager.createQuery(
+                    "SELECT r FROM Restaurant r ORDER BY r.id", Restaurant.class), HibernateUtil.DEFAULT_FETCH_SIZE);
+        } catch (Exception e) {
+            SimpleLogger.error("An error occured while trying to stream all restaurants: " + e.getMessage() );
+        }
+
+        return Stream.empty();
+    }
+
+    /**
+     * Retrieves one page of the products of a restaurant ordered by id, using keyset pagination
+     * on the (FK_RESTO, NUMERO) index.
+     *
+     * @param restaurant the restaurant whose products are to be retrieved.
+     * @param afterId the id of the last product of the previous page, or null for the first page.
+     * @param limit the maximum number of products in the page.
+     * @return the products of the page, or an empty list if there are none left or an error occurs.
+     */
+    public List<Product> getProductsPage(Restaurant restaurant, Long afterId, int limit) {
+
+        try {
+            return HibernateUtil.inTransaction(entityManager -> entityManager.createQuery(
+                    "SELECT p FROM Product p JOIN FETCH p.restaurant WHERE p.restaurant.id = :restaurantId AND p.id > :afterId ORDER BY p.id", Product.class)
+                    .setParameter("restaurantId", restaurant.getId())
+                    .setParameter("afterId", afterId == null ? 0L : afterId)
+                    .setMaxResults(limit)
+                    .getResultList()
+            );
+        } catch (Exception e) {
+            SimpleLogger.error("An error occured while trying to get a page of products: " + e.getMessage() );
+        }
+
+        return List.of();
+    }
+
+    /**
+     * Streams the products of a restaurant ordered by id, detaching them as they are read.
+     * The stream must be closed once consumed.
+     *
+     * @param restaurant the restaurant whose products are to be retrieved.
+     * @return the stream of products, or an empty stream if an error occurs.
+     */
+    public Stream<Product> streamProductsFromRestaurant(Restaurant restaurant) {
+
+        try {
+            return HibernateUtil.streamDetached(entityManager -> entityManager.createQuery(
+                    "SELECT p FROM Product p JOIN FETCH p.restaurant WHERE p.restaurant.id = :restaurantId ORDER BY p.id", Product.class)
+                    .setParameter("restaurantId", restaurant.getId()), HibernateUtil.DEFAULT_FETCH_SIZE);
+        } catch (Exception e) {
+            SimpleLogger.error("An error occured while trying to stream the products of a restaurant: " + e.getMessage() );
+        }
+
+        return Stream.empty();
+    }
+
     /**
      * Adds a new restaurant to the system.
      *
@@ -109,19 +207,11 @@ public class RestaurantService {
      */
     public boolean addRestaurant(Restaurant restaurant) {
 
-        EntityManager entityManager = HibernateUtil.getEntityManager();
-        EntityTransaction transaction = entityManager.getTransaction();
-
         try {
-            transaction.begin();
-
-            entityManager.persist(restaurant);
-
-            transaction.commit();
+            HibernateUtil.runInTransaction(entityManager -> entityManager.persist(restaurant));
 
             return true;
         } catch (Exception e) {
-            transaction.rollback();
             SimpleLogger.error("An error occured while trying to add a restaurant: " + e.getMessage() );
         }
 
@@ -136,20 +226,24 @@ public class RestaurantService {
      */
     public boolean modifyRestaurant(Restaurant restaurant) {
 
-        EntityManager entityManager = HibernateUtil.getEntityManager();
-        EntityTransaction transaction = entityManager.getTransaction();
-
         try {
-            transaction.begin();
-
-            entityManager.merge(restaurant);
+            Long version = HibernateUtil.inTransaction(entityManager -> {
+                Restaurant managedRestaurant = entityManager.merge(restaurant);
+                entityManager.flush();
+                return managedRestaurant.getVersion();
+            });
+            // The given restaurant carries the new version, so that it can be modified again
+            restaurant.setVersion(version);
 
-            transaction.commit();
+            this.invalidateMenu(restaurant.getId());
 
             return true;
         } catch (Exception e) {
-            transaction.rollback();
-            SimpleLogger.error("An error occured while trying to modify a restaurant: " + e.getMessage() );
+            if (HibernateUtil.isOptimisticLockFailure(e)) {
+                SimpleLogger.warning("The restaurant was modified by someone else in the meantime, reload it before modifying it again");
+            } else {
+                SimpleLogger.error("An error occured while trying to modify a restaurant: " + e.getMessage() );
+            }
         }
 
         return false;
@@ -163,23 +257,27 @@ public class RestaurantService {
      */
     public boolean removeRestaurant(Restaurant restaurant) {
 
-        EntityManager entityManager = HibernateUtil.getEntityManager();
-        EntityTransaction transaction = entityManager.getTransaction();
-
         try {
-            transaction.begin();
-
-            entityManager.remove(restaurant);
+            // The restaurant comes from a closed unit of work, it has to be attached again before its removal
+            HibernateUtil.runInTransaction(entityManager -> entityManager.remove(entityManager.merge(restaurant)));
 
-            transaction.commit();
+            this.invalidateMenu(restaurant.getId());
 
             return true;
         } catch (Exception e) {
-            transaction.rollback();
-            SimpleLogger.error("An error occured while trying to remove a restaurant: " + e.getMessage() );
+            if (HibernateUtil.isOptimisticLockFailure(e)) {
+                SimpleLogger.warning("The restaurant was modified by someone else in the meantime, reload it before removing it");
+            } else {
+                SimpleLogger.error("An error occured while trying to remove a restaurant: " + e.getMessage() );
+            }
         }
 
         return false;
     }
 
+    // The menu must be built again from the committed catalog, so it is discarded once the enclosing unit of work,
+    // if any, is committed
+    private void invalidateMenu(Long restaurantId) {
+        HibernateUtil.afterCommit(() -> MenuService.getInstance().invalidate(restaurantId));
+    }
 }
@@ -0,0 +1,56 @@
+package ch.hearc.ig.orderresto.service;
+
+import ch.hearc.ig.orderresto.business.DailyRevenue;
+import ch.hearc.ig.orderresto.business.Order;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Changes to the daily revenue rollups made by one transaction, summed per restaurant and day so that each rollup
+ * is written once whatever the number of orders. The changes are applied in key order, which makes concurrent
+ * transactions lock the rollup rows in the same order and prevents deadlocks.
+ */
+class RevenueChanges {
+
+    private final Map<DailyRevenue.Key, Change> changes = new TreeMap<>();
+
+    /**
+     * Counts a new order, its restaurant, date and total amount must be set.
+     */
+    void add(Order order) {
+        this.change(order, 1, order.getTotalCents());
+    }
+
+    /**
+     * Discounts an order, with the restaurant, date and total amount it was counted with.
+     */
+    void subtract(Order order) {
+        this.change(order, -1, Math.negateExact(order.getTotalCents()));
+    }
+
+    boolean isEmpty() {
+        return this.changes.isEmpty();
+    }
+
+    Map<DailyRevenue.Key, Change> getChanges() {
+        return this.changes;
+    }
+
+    private void change(Order order, int orderCount, long amountCents) {
+        DailyRevenue.Key key = new DailyRevenue.Key(order.getRestaurant().getId(), order.getWhen().toLocalDate());
+        Change change = this.changes.computeIfAbsent(key, k -> new Change());
+        change.orderCount += orderCount;
+        change.amountCents = Math.addExact(change.amountCents, amountCents);
+
+        // An order moved back and forth within the transaction leaves nothing to write
+        if (change.orderCount == 0 && change.amountCents == 0) {
+            this.changes.remove(key);
+        }
+    }
+
+    static class Change {
+        long orderCount;
+        long amountCents;
+    }
+}
@@ -0,0 +1,235 @@
+package ch.hearc.ig.orderresto.service;
+
+import ch.hearc.ig.orderresto.business.DailyRevenue;
+import ch.hearc.ig.orderresto.business.PricingEngine;
+import ch.hearc.ig.orderresto.business.Restaurant;
+import ch.hearc.ig.orderresto.persistence.utils.HibernateUtil;
+import ch.hearc.ig.orderresto.utils.SimpleLogger;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.hibernate.query.NativeQuery;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Service class for the revenue reports. The reports only read the daily rollups of CHIFFRE_AFFAIRES_JOUR, which
+ * {@link ProductOrderService} updates in the same transaction as the orders it adds, modifies and removes.
+ * Archived orders stay counted in the rollups.
+ */
+public class RevenueService {
+
+    // A single statement adds to the rollup of a restaurant and day or creates it, without reading it first
+    private static final String MERGE_ROLLUP_SQL =
+            "MERGE INTO CHIFFRE_AFFAIRES_JOUR r "
+                    + "USING (SELECT CAST(? AS NUMBER(9)) AS FK_RESTO, CAST(? AS DATE) AS JOUR FROM DUAL) d "
+                    + "ON (r.FK_RESTO = d.FK_RESTO AND r.JOUR = d.JOUR) "
+                    + "WHEN MATCHED THEN UPDATE SET r.NOMBRE_COMMANDES = r.NOMBRE_COMMANDES + ?, r.MONTANT_TOTAL = r.MONTANT_TOTAL + ? "
+                    + "WHEN NOT MATCHED THEN INSERT (FK_RESTO, JOUR, NOMBRE_COMMANDES, MONTANT_TOTAL) VALUES (d.FK_RESTO, d.JOUR, ?, ?)";
+
+    private static final RevenueService instance = new RevenueService();
+
+    private RevenueService() {}
+
+    public static RevenueService getInstance() {
+        return instance;
+    }
+
+    /**
+     * Retrieves the daily figures of a restaurant over a period.
+     *
+     * @param restaurant the restaurant whose revenue is to be retrieved.
+     * @param from the first day of the period.
+     * @param to the last day of the period, included.
+     * @return the figures of the days that had orders, by day, or an empty list if an error occurs.
+     */
+    public List<DailyRevenue> getDailyRevenue(Restaurant restaurant, LocalDate from, LocalDate to) {
+
+        try {
+            return HibernateUtil.inTransaction(entityManager -> entityManager.createQuery(
+                    "SELECT r FROM DailyRevenue r WHERE r.restaurantId = :restaurantId AND r.day BETWEEN :from AND :to AND r.orderCount > 0 ORDER BY r.day", DailyRevenue.class)
+                    .setParameter("restaurantId", restaurant.getId())
+                    .setParameter("from", from)
+                    .setParameter("to", to)
+                    .getResultList()
+            );
+        } catch (Exception e) {
+            SimpleLogger.error("An error occured while trying to get the daily revenue of a restaurant: " + e.getMessage() );
+        }
+
+        return List.of();
+    }
+
+    /**
+     * Retrieves the figures of all the restaurants for one day.
+     *
+     * @param day the day whose revenue is to be retrieved.
+     * @return the figures of the restaurants that had orders, from the largest revenue down, or an empty list if
+     * an error occurs.
+     */
+    public List<DailyRevenue> getRevenueOfDay(LocalDate day) {
+
+        try {
+            return HibernateUtil.inTransaction(entityManager -> entityManager.createQuery(
+                    "SELECT r FROM DailyRevenue r WHERE r.day = :day AND r.orderCount > 0 ORDER BY r.totalAmount DESC", DailyRevenue.class)
+                    .setParameter("day", day)
+                    .getResultList()
+            );
+        } catch (Exception e) {
+            SimpleLogger.error("An error occured while trying to get the revenue of a day: " + e.getMessage() );
+        }
+
+        return List.of();
+    }
+
+    /**
+     * Computes the revenue of a restaurant over a period from its daily figures.
+     *
+     * @param restaurant the restaurant whose revenue is to be computed.
+     * @param from the first day of the period.
+     * @param to the last day of the period, included.
+     * @return the revenue of the period, or null if an error occurs.
+     */
+    public BigDecimal getRevenue(Restaurant restaurant, LocalDate from, LocalDate to) {
+
+        try {
+            return HibernateUtil.inTransaction(entityManager -> entityManager.createQuery(
+                    "SELECT COALESCE(SUM(r.totalAmount), 0) FROM DailyRevenue r WHERE r.restaurantId = :restaurantId AND r.day BETWEEN :from AND :to", BigDecimal.class)
+                    .setParameter("restaurantId", restaurant.getId())
+                    .setParameter("from", from)
+                    .setParameter("to", to)
+                    .getSingleResult()
+            );
+        } catch (Exception e) {
+            SimpleLogger.error("An error occured while trying to compute the revenue of a restaurant: " + e.getMessage() );
+        }
+
+        return null;
+    }
+
+    /**
+     * Recomputes all the rollups from the live and archived orders, e.g. after the orders were changed directly
+     * in the database. The orders are streamed sorted by restaurant and date, so that only one rollup is in memory
+     * at a time, and the rollups are inserted by JDBC batches. Everything runs in one transaction: the reports
+     * keep reading the previous rollups until the new ones are committed.
+     * Orders placed while the rollups are rebuilt may be missed, the rebuild is meant to run with the application
+     * stopped.
+     *
+     * @return the number of rollups written, or -1 if an error occurs.
+     */
+    @SuppressWarnings("unchecked")
+    public int rebuildRollups() {
+
+        int batchSize = HibernateUtil.getJdbcBatchSize();
+        long start = System.nanoTime();
+
+        try {
+            int rollups = HibernateUtil.inTransaction(entityManager -> {
+                entityManager.createQuery("DELETE FROM DailyRevenue").executeUpdate();
+
+                NativeQuery<Object[]> orders = entityManager.createNativeQuery(
+                        "SELECT FK_RESTO, QUAND, MONTANT_TOTAL FROM COMMANDE "
+                                + "UNION ALL SELECT FK_RESTO, QUAND, MONTANT_TOTAL FROM COMMANDE_ARCHIVE "
+                                + "ORDER BY 1, 2")
+                        .unwrap(NativeQuery.class);
+
+                int written = 0;
+                try (Stream<Object[]> rows = orders.setFetchSize(HibernateUtil.DEFAULT_FETCH_SIZE).stream()) {
+                    DailyRevenue.Key currentKey = null;
+                    long orderCount = 0;
+                    BigDecimal amount = BigDecimal.ZERO;
+
+                    for (Iterator<Object[]> iterator = rows.iterator(); iterator.hasNext(); ) {
+                        Object[] row = iterator.next();
+                        DailyRevenue.Key key = new DailyRevenue.Key(((Number) row[0]).longValue(), toLocalDate(row[1]));
+
+                        if (!key.equals(currentKey)) {
+                            if (currentKey != null) {
+                                entityManager.persist(new DailyRevenue(currentKey.getRestaurantId(), currentKey.getDay(), orderCount, amount));
+                                if (++written % batchSize == 0) {
+                                    entityManager.flush();
+                                    entityManager.clear();
+                                }
+                            }
+                            currentKey = key;
+                            orderCount = 0;
+                            amount = BigDecimal.ZERO;
+                        }
+                        orderCount++;
+                        amount = amount.add((BigDecimal) row[2]);
+                    }
+
+                    if (currentKey != null) {
+                        entityManager.persist(new DailyRevenue(currentKey.getRestaurantId(), currentKey.getDay(), orderCount, amount));
+                        written++;
+                    }
+                }
+                return written;
+            });
+
+            SimpleLogger.info(String.format("Rebuilt %d daily revenue rollups in %.1f s", rollups, (System.nanoTime() - start) / 1_000_000_000.0));
+
+            return rollups;
+        } catch (Exception e) {
+            SimpleLogger.error("An error occured while trying to rebuild the revenue rollups: " + e.getMessage() );
+        }
+
+        return -1;
+    }
+
+    /**
+     * Applies the changes of a transaction to the rollups, with one statement per restaurant and day. Must be
+     * called within the transaction that changes the orders.
+     * Two transactions may both find no rollup for the same restaurant and day and both try to create it: the
+     * second one then fails on the primary key once the first one committed, and its statement is run again, which
+     * now adds to the rollup created by the first one. The statements are run on the JDBC connection, so that the
+     * failure of the first attempt does not mark the transaction for rollback.
+     *
+     * @param entityManager the EntityManager of the unit of work.
+     * @param changes the changes made to the orders.
+     */
+    void applyChanges(EntityManager entityManager, RevenueChanges changes) {
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(MERGE_ROLLUP_SQL)) {
+                for (Map.Entry<DailyRevenue.Key, RevenueChanges.Change> entry : changes.getChanges().entrySet()) {
+                    BigDecimal amount = PricingEngine.toAmount(entry.getValue().amountCents);
+                    statement.setLong(1, entry.getKey().getRestaurantId());
+                    statement.setDate(2, java.sql.Date.valueOf(entry.getKey().getDay()));
+                    statement.setLong(3, entry.getValue().orderCount);
+                    statement.setBigDecimal(4, amount);
+                    statement.setLong(5, entry.getValue().orderCount);
+                    statement.setBigDecimal(6, amount);
+
+                    try {
+                        statement.executeUpdate();
+                    } catch (SQLIntegrityConstraintViolationException e) {
+                        // Only the failed statement was rolled back, the rollup now exists
+                        statement.executeUpdate();
+                    }
+                }
+            }
+        });
+    }
+
+    // Oracle DATE columns are read as timestamps
+    private static LocalDate toLocalDate(Object value) {
+        if (value instanceof Timestamp) {
+            return ((Timestamp) value).toLocalDateTime().toLocalDate();
+        }
+        if (value instanceof java.sql.Date) {
+            return ((java.sql.Date) value).toLocalDate();
+        }
+        if (value instanceof LocalDateTime) {
+            return ((LocalDateTime) value).toLocalDate();
+        }
+        return (LocalDate) value;
+    }
+}
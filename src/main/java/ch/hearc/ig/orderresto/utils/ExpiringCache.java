@@ -0,0 +1,85 @@
+package ch.hearc.ig.orderresto.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread-safe cache holding at most a given number of entries, each for a given time after it was put.
+ * Entries are kept in insertion order, so the oldest ones, which expire first, are also the first evicted when
+ * the cache is full. Expired entries are dropped as new ones are put, the cache never needs a cleaning thread.
+ */
+public class ExpiringCache<K, V> {
+
+    private final int maxSize;
+    private final long timeToLiveNanos;
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>();
+
+    /**
+     * @param maxSize the maximum number of entries.
+     * @param timeToLiveMillis the time an entry is kept after it was put, in milliseconds.
+     */
+    public ExpiringCache(int maxSize, long timeToLiveMillis) {
+        this.maxSize = maxSize;
+        this.timeToLiveNanos = timeToLiveMillis * 1_000_000;
+    }
+
+    /**
+     * @return the value of the key, or null if it is absent or expired.
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = this.entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.expiresAt >= 0) {
+            this.entries.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Puts a value, replacing any previous one and restarting its time to live.
+     */
+    public synchronized void put(K key, V value) {
+        long now = System.nanoTime();
+        this.evictExpired(now);
+
+        // Removed first so that the key moves to the end of the insertion order
+        this.entries.remove(key);
+        this.entries.put(key, new Entry<>(value, now + this.timeToLiveNanos));
+
+        if (this.entries.size() > this.maxSize) {
+            Iterator<K> oldest = this.entries.keySet().iterator();
+            oldest.next();
+            oldest.remove();
+        }
+    }
+
+    public synchronized void remove(K key) {
+        this.entries.remove(key);
+    }
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    private void evictExpired(long now) {
+        Iterator<Map.Entry<K, Entry<V>>> iterator = this.entries.entrySet().iterator();
+        while (iterator.hasNext() && now - iterator.next().getValue().expiresAt >= 0) {
+            iterator.remove();
+        }
+    }
+
+    private static class Entry<V> {
+
+        private final V value;
+        private final long expiresAt;
+
+        private Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
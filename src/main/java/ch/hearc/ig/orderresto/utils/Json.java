@@ -0,0 +1,243 @@
+package ch.hearc.ig.orderresto.utils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON support for the API and the reports, mapping JSON values to plain Java ones: objects to maps,
+ * arrays to lists, numbers to BigDecimal (any Number when writing), strings, booleans and null.
+ */
+public final class Json {
+
+    private Json() {}
+
+    public static String write(Object value) {
+        StringBuilder json = new StringBuilder();
+        writeValue(json, value);
+        return json.toString();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the text is not valid JSON.
+     */
+    public static Object parse(String text) {
+        Parser parser = new Parser(text);
+        Object value = parser.readValue();
+        parser.skipWhitespace();
+        if (parser.position < text.length()) {
+            throw parser.error("Unexpected content");
+        }
+        return value;
+    }
+
+    private static void writeValue(StringBuilder json, Object value) {
+        if (value == null) {
+            json.append("null");
+        } else if (value instanceof String string) {
+            writeString(json, string);
+        } else if (value instanceof BigDecimal decimal) {
+            json.append(decimal.toPlainString());
+        } else if (value instanceof Number || value instanceof Boolean) {
+            json.append(value);
+        } else if (value instanceof Map<?, ?> map) {
+            json.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                writeString(json, String.valueOf(entry.getKey()));
+                json.append(':');
+                writeValue(json, entry.getValue());
+            }
+            json.append('}');
+        } else if (value instanceof Iterable<?> iterable) {
+            json.append('[');
+            boolean first = true;
+            for (Object element : iterable) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                writeValue(json, element);
+            }
+            json.append(']');
+        } else {
+            writeString(json, value.toString());
+        }
+    }
+
+    private static void writeString(StringBuilder json, String string) {
+        json.append('"');
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        json.append('"');
+    }
+
+    private static class Parser {
+
+        private final String text;
+        private int position;
+
+        private Parser(String text) {
+            this.text = text;
+        }
+
+        private Object readValue() {
+            this.skipWhitespace();
+            if (this.position >= this.text.length()) {
+                throw this.error("Unexpected end");
+            }
+            char c = this.text.charAt(this.position);
+            return switch (c) {
+                case '{' -> this.readObject();
+                case '[' -> this.readArray();
+                case '"' -> this.readString();
+                case 't' -> this.readLiteral("true", Boolean.TRUE);
+                case 'f' -> this.readLiteral("false", Boolean.FALSE);
+                case 'n' -> this.readLiteral("null", null);
+                default -> this.readNumber();
+            };
+        }
+
+        private Map<String, Object> readObject() {
+            Map<String, Object> object = new LinkedHashMap<>();
+            this.position++;
+            this.skipWhitespace();
+            if (this.consume('}')) {
+                return object;
+            }
+            do {
+                this.skipWhitespace();
+                if (this.position >= this.text.length() || this.text.charAt(this.position) != '"') {
+                    throw this.error("Expected a member name");
+                }
+                String name = this.readString();
+                this.skipWhitespace();
+                if (!this.consume(':')) {
+                    throw this.error("Expected ':'");
+                }
+                object.put(name, this.readValue());
+                this.skipWhitespace();
+            } while (this.consume(','));
+            if (!this.consume('}')) {
+                throw this.error("Expected ',' or '}'");
+            }
+            return object;
+        }
+
+        private List<Object> readArray() {
+            List<Object> array = new ArrayList<>();
+            this.position++;
+            this.skipWhitespace();
+            if (this.consume(']')) {
+                return array;
+            }
+            do {
+                array.add(this.readValue());
+                this.skipWhitespace();
+            } while (this.consume(','));
+            if (!this.consume(']')) {
+                throw this.error("Expected ',' or ']'");
+            }
+            return array;
+        }
+
+        private String readString() {
+            StringBuilder string = new StringBuilder();
+            this.position++;
+            while (this.position < this.text.length()) {
+                char c = this.text.charAt(this.position++);
+                if (c == '"') {
+                    return string.toString();
+                }
+                if (c != '\\') {
+                    string.append(c);
+                    continue;
+                }
+                if (this.position >= this.text.length()) {
+                    break;
+                }
+                char escaped = this.text.charAt(this.position++);
+                switch (escaped) {
+                    case 'b' -> string.append('\b');
+                    case 'f' -> string.append('\f');
+                    case 'n' -> string.append('\n');
+                    case 'r' -> string.append('\r');
+                    case 't' -> string.append('\t');
+                    case 'u' -> {
+                        if (this.position + 4 > this.text.length()) {
+                            throw this.error("Invalid unicode escape");
+                        }
+                        try {
+                            string.append((char) Integer.parseInt(this.text.substring(this.position, this.position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw this.error("Invalid unicode escape");
+                        }
+                        this.position += 4;
+                    }
+                    default -> string.append(escaped);
+                }
+            }
+            throw this.error("Unterminated string");
+        }
+
+        private Object readLiteral(String literal, Object value) {
+            if (!this.text.startsWith(literal, this.position)) {
+                throw this.error("Unexpected value");
+            }
+            this.position += literal.length();
+            return value;
+        }
+
+        private BigDecimal readNumber() {
+            int start = this.position;
+            while (this.position < this.text.length() && "+-0123456789.eE".indexOf(this.text.charAt(this.position)) >= 0) {
+                this.position++;
+            }
+            try {
+                return new BigDecimal(this.text.substring(start, this.position));
+            } catch (NumberFormatException e) {
+                this.position = start;
+                throw this.error("Unexpected value");
+            }
+        }
+
+        private boolean consume(char expected) {
+            if (this.position < this.text.length() && this.text.charAt(this.position) == expected) {
+                this.position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void skipWhitespace() {
+            while (this.position < this.text.length() && Character.isWhitespace(this.text.charAt(this.position))) {
+                this.position++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + this.position + " of the JSON document");
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package ch.hearc.ig.orderresto.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records durations with the bucket layout of HDR histograms: each power of two nanoseconds is split into 128
+ * linear sub-buckets, so that every duration is counted within 1% of its value, from a microsecond to hours,
+ * in a fixed array of counters. Recording costs a few atomic increments, and percentiles are read without
+ * keeping the durations. Thread-safe.
+ */
+public class LatencyHistogram {
+
+    // Sub-buckets per power of two are 2^SUB_BUCKET_BITS, half of them overlap the previous power of two
+    private static final int SUB_BUCKET_BITS = 8;
+    private static final int SUB_BUCKET_HALF_BITS = SUB_BUCKET_BITS - 1;
+    private static final int SUB_BUCKET_HALF_COUNT = 1 << SUB_BUCKET_HALF_BITS;
+    private static final long SUB_BUCKET_MASK = (1L << SUB_BUCKET_BITS) - 1;
+
+    // Longest duration counted, about 19 hours, longer ones are counted as this one
+    private static final long HIGHEST_TRACKABLE_NANOS = (1L << 46) - 1;
+    private static final int BUCKET_COUNT = 46 - SUB_BUCKET_BITS + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray((BUCKET_COUNT + 1) * SUB_BUCKET_HALF_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        this.counts.incrementAndGet(indexOf(Math.min(Math.max(0, nanos), HIGHEST_TRACKABLE_NANOS)));
+        this.count.increment();
+        this.totalNanos.add(nanos);
+        this.maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /**
+     * @return the mean duration, in milliseconds.
+     */
+    public double getMeanMillis() {
+        long count = this.count.sum();
+        return count == 0 ? 0 : this.totalNanos.sum() / 1_000_000.0 / count;
+    }
+
+    /**
+     * @return the longest duration, in milliseconds.
+     */
+    public double getMaxMillis() {
+        return this.maxNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * @param percentile the percentile, e.g. 99 for the duration under which 99% of the durations fall.
+     * @return the highest duration counted in the sub-bucket of the percentile, in milliseconds, capped by the
+     * longest duration.
+     */
+    public double getPercentileMillis(double percentile) {
+        long count = this.count.sum();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * Math.min(percentile, 100) / 100.0));
+        long seen = 0;
+        for (int index = 0; index < this.counts.length(); index++) {
+            seen += this.counts.get(index);
+            if (seen >= rank) {
+                return Math.min(highestNanosOf(index) / 1_000_000.0, this.getMaxMillis());
+            }
+        }
+        return this.getMaxMillis();
+    }
+
+    /**
+     * @return a one line summary of the durations, suitable for the logs.
+     */
+    public String summary() {
+        return String.format("count=%d mean=%.2fms p50=%.2fms p99=%.2fms max=%.2fms",
+                this.getCount(), this.getMeanMillis(), this.getPercentileMillis(50), this.getPercentileMillis(99), this.getMaxMillis());
+    }
+
+    // The power of two of the duration selects the bucket, its leading bits the sub-bucket
+    private static int indexOf(long nanos) {
+        int bucket = Math.max(0, 64 - Long.numberOfLeadingZeros(nanos | SUB_BUCKET_MASK) - SUB_BUCKET_BITS);
+        int subBucket = (int) (nanos >>> bucket);
+        return ((bucket + 1) << SUB_BUCKET_HALF_BITS) + (subBucket - SUB_BUCKET_HALF_COUNT);
+    }
+
+    private static long highestNanosOf(int index) {
+        int bucket = (index >> SUB_BUCKET_HALF_BITS) - 1;
+        int subBucket = (index & (SUB_BUCKET_HALF_COUNT - 1)) + SUB_BUCKET_HALF_COUNT;
+        if (bucket < 0) {
+            subBucket -= SUB_BUCKET_HALF_COUNT;
+            bucket = 0;
+        }
+        return ((long) subBucket << bucket) + (1L << bucket) - 1;
+    }
+}
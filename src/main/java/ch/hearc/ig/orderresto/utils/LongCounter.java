@@ -0,0 +1,169 @@
+package ch.hearc.ig.orderresto.utils;
+
+import java.util.Arrays;
+
+/**
+ * Counts occurrences of long keys (e.g. identifiers) without boxing: keys and counts are kept in two primitive
+ * arrays, as an open-addressing hash table with linear probing. Its memory only depends on the number of distinct
+ * keys, not on the number of occurrences counted.
+ * Long.MIN_VALUE cannot be counted, it marks the free slots. Not thread-safe.
+ */
+public class LongCounter {
+
+    private static final long FREE = Long.MIN_VALUE;
+
+    private long[] keys;
+    private long[] counts;
+    private int mask;
+    private int size;
+
+    /**
+     * @param expectedKeys the number of distinct keys expected, the table grows beyond it if needed.
+     */
+    public LongCounter(int expectedKeys) {
+        // At most half of the slots are used, so that probe sequences stay short
+        int capacity = Integer.highestOneBit(Math.max(expectedKeys, 4) * 2 - 1) << 1;
+        this.allocate(capacity);
+    }
+
+    public void increment(long key) {
+        this.add(key, 1);
+    }
+
+    public void add(long key, long delta) {
+        if (key == FREE) {
+            throw new IllegalArgumentException("Long.MIN_VALUE cannot be counted");
+        }
+
+        int slot = this.slotOf(key);
+        if (this.keys[slot] == FREE) {
+            this.keys[slot] = key;
+            if (++this.size * 2 > this.keys.length) {
+                this.grow();
+                slot = this.slotOf(key);
+            }
+        }
+        this.counts[slot] += delta;
+    }
+
+    /**
+     * @return the count of the key, 0 if it was never counted.
+     */
+    public long get(long key) {
+        int slot = this.slotOf(key);
+        return this.keys[slot] == FREE ? 0 : this.counts[slot];
+    }
+
+    /**
+     * @return the number of distinct keys counted.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Selects the keys with the highest counts through a min-heap of k entries, in O(n log k) time without
+     * sorting all the keys. Equal counts are ranked by ascending key, so the result does not depend on the table.
+     *
+     * @param k the number of keys to select.
+     * @return at most k keys, from the highest count down.
+     */
+    public long[] topKeys(int k) {
+        int limit = Math.min(k, this.size);
+        // Slots of the selected keys, the root being the lowest ranked one
+        int[] heap = new int[limit];
+        int heapSize = 0;
+
+        for (int slot = 0; slot < this.keys.length; slot++) {
+            if (this.keys[slot] == FREE) {
+                continue;
+            }
+            if (heapSize < limit) {
+                heap[heapSize] = slot;
+                this.siftUp(heap, heapSize++);
+            } else if (limit > 0 && this.ranksHigher(slot, heap[0])) {
+                heap[0] = slot;
+                this.siftDown(heap, heapSize);
+            }
+        }
+
+        // Emptying the heap yields the keys from the lowest ranked up
+        long[] top = new long[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            top[i] = this.keys[heap[0]];
+            heap[0] = heap[i];
+            this.siftDown(heap, i);
+        }
+        return top;
+    }
+
+    private boolean ranksHigher(int slot, int otherSlot) {
+        if (this.counts[slot] != this.counts[otherSlot]) {
+            return this.counts[slot] > this.counts[otherSlot];
+        }
+        return this.keys[slot] < this.keys[otherSlot];
+    }
+
+    private void siftUp(int[] heap, int index) {
+        int slot = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!this.ranksHigher(heap[parent], slot)) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = slot;
+    }
+
+    private void siftDown(int[] heap, int heapSize) {
+        int index = 0;
+        int slot = heap[0];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && this.ranksHigher(heap[child], heap[child + 1])) {
+                child++;
+            }
+            if (!this.ranksHigher(slot, heap[child])) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = slot;
+    }
+
+    private int slotOf(long key) {
+        // Fibonacci hashing spreads sequential identifiers over the table
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & this.mask;
+        while (this.keys[slot] != FREE && this.keys[slot] != key) {
+            slot = (slot + 1) & this.mask;
+        }
+        return slot;
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.counts = new long[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(this.keys, FREE);
+    }
+
+    private void grow() {
+        long[] oldKeys = this.keys;
+        long[] oldCounts = this.counts;
+        this.allocate(oldKeys.length * 2);
+
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != FREE) {
+                int newSlot = this.slotOf(oldKeys[slot]);
+                this.keys[newSlot] = oldKeys[slot];
+                this.counts[newSlot] = oldCounts[slot];
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package ch.hearc.ig.orderresto.business;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OrderTest {
+
+    private final Restaurant restaurant = new Restaurant(1L, "Restaurant", new Address("CH", "2000", "Neuchâtel", "Rue du Seyon", "1"));
+
+    @Test
+    void totalsTheProductsAsTheyAreAdded() {
+        Order order = new Order.Builder().build();
+        order.addProduct(this.product(1L, "12.50"));
+        order.addProduct(this.product(2L, "7.25"));
+
+        assertEquals(1_975, order.getTotalCents());
+        assertEquals(new BigDecimal("19.75"), order.getTotalAmount());
+    }
+
+    @Test
+    void countsAProductAddedTwiceOnce() {
+        Order order = new Order.Builder().build();
+        Product product = this.product(1L, "12.50");
+        order.addProduct(product);
+        order.addProduct(product);
+
+        assertEquals(new BigDecimal("12.50"), order.getTotalAmount());
+    }
+
+    @Test
+    void countsTwoCopiesOfAMenuProductOnce() {
+        MenuSnapshot menu = new MenuSnapshot(this.restaurant, 1, List.of(this.product(1L, "12.50")));
+        Order order = new Order.Builder().build();
+        order.addProduct(menu.getProduct(0));
+        order.addProduct(menu.getProduct(0));
+
+        assertEquals(1, order.getProducts().size());
+        assertEquals(new BigDecimal("12.50"), order.getTotalAmount());
+    }
+
+    @Test
+    void readingTheTotalDoesNotChangeIt() {
+        Order order = new Order.Builder().build();
+        order.addProduct(this.product(1L, "3.00"));
+
+        BigDecimal first = order.getTotalAmount();
+        order.addProduct(this.product(2L, "4.00"));
+
+        assertEquals(new BigDecimal("3.00"), first);
+        assertEquals(new BigDecimal("7.00"), order.getTotalAmount());
+    }
+
+    @Test
+    void recalculatesTheTotalFromTheProducts() {
+        Order order = new Order.Builder().build();
+        Product product = this.product(1L, "10.00");
+        order.addProduct(product);
+        product.setUnitPrice(new BigDecimal("11.005"));
+
+        order.recalculateTotalAmount();
+
+        assertEquals(1_101, order.getTotalCents());
+        assertEquals(new BigDecimal("11.01"), order.getTotalAmount());
+    }
+
+    @Test
+    void takesTheTotalSetAsTheStoredOne() {
+        Order order = new Order.Builder().build();
+        order.setTotalAmount(new BigDecimal("42.10"));
+
+        assertEquals(4_210, order.getTotalCents());
+        assertEquals(new BigDecimal("42.10"), order.getTotalAmount());
+    }
+
+    private Product product(Long id, String unitPrice) {
+        return new Product(id, "Produit " + id, new BigDecimal(unitPrice), "Produit de test", this.restaurant);
+    }
+}
@@ -0,0 +1,75 @@
+package ch.hearc.ig.orderresto.business;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PricingEngineTest {
+
+    @Test
+    void convertsAmountsToCents() {
+        assertEquals(1_250, PricingEngine.toCents(new BigDecimal("12.5")));
+        assertEquals(1_600, PricingEngine.toCents(new BigDecimal("16")));
+        assertEquals(-99, PricingEngine.toCents(new BigDecimal("-0.99")));
+        assertEquals(0, PricingEngine.toCents(BigDecimal.ZERO));
+    }
+
+    @Test
+    void roundsExtraDecimalsHalfAwayFromZero() {
+        assertEquals(101, PricingEngine.toCents(new BigDecimal("1.005")));
+        assertEquals(100, PricingEngine.toCents(new BigDecimal("1.0049")));
+        assertEquals(-101, PricingEngine.toCents(new BigDecimal("-1.005")));
+        assertEquals(-100, PricingEngine.toCents(new BigDecimal("-1.0049")));
+    }
+
+    @Test
+    void rejectsAmountsBeyondALongOfCents() {
+        BigDecimal largest = BigDecimal.valueOf(Long.MAX_VALUE, 2);
+
+        assertEquals(Long.MAX_VALUE, PricingEngine.toCents(largest));
+        assertThrows(ArithmeticException.class, () -> PricingEngine.toCents(largest.add(new BigDecimal("0.01"))));
+        assertThrows(ArithmeticException.class, () -> PricingEngine.toCents(new BigDecimal("1E30")));
+    }
+
+    @Test
+    void convertsCentsToAmountsWithTwoDecimals() {
+        assertEquals(new BigDecimal("12.50"), PricingEngine.toAmount(1_250));
+        assertEquals(new BigDecimal("-0.05"), PricingEngine.toAmount(-5));
+        assertEquals(new BigDecimal("0.00"), PricingEngine.toAmount(0));
+    }
+
+    @Test
+    void addsExactly() {
+        assertEquals(3_000, PricingEngine.add(1_250, 1_750));
+        assertEquals(-500, PricingEngine.add(1_250, -1_750));
+        assertThrows(ArithmeticException.class, () -> PricingEngine.add(Long.MAX_VALUE, 1));
+        assertThrows(ArithmeticException.class, () -> PricingEngine.add(Long.MIN_VALUE, -1));
+    }
+
+    @Test
+    void quotesTheLinesOfABasket() {
+        long[] unitPricesCents = {1_250, 475, 9_900, 100};
+        int[] quantities = {2, 3, 1, 7};
+
+        assertEquals(2 * 1_250 + 3 * 475 + 9_900, PricingEngine.quote(unitPricesCents, quantities, 3));
+        assertEquals(2 * 1_250 + 3 * 475 + 9_900 + 7 * 100, PricingEngine.quote(unitPricesCents, quantities, 4));
+        assertEquals(0, PricingEngine.quote(unitPricesCents, quantities, 0));
+    }
+
+    @Test
+    void rejectsQuotesBeyondALongOfCents() {
+        assertThrows(ArithmeticException.class, () -> PricingEngine.quote(new long[]{Long.MAX_VALUE / 2}, new int[]{3}, 1));
+        assertThrows(ArithmeticException.class, () -> PricingEngine.quote(new long[]{Long.MAX_VALUE, 1}, new int[]{1, 1}, 2));
+    }
+
+    @Test
+    void checksWhatANumberColumnCanStore() {
+        assertEquals(PricingEngine.MAX_STORABLE_CENTS, PricingEngine.checkStorable(PricingEngine.MAX_STORABLE_CENTS));
+        assertEquals(-PricingEngine.MAX_STORABLE_CENTS, PricingEngine.checkStorable(-PricingEngine.MAX_STORABLE_CENTS));
+        assertThrows(ArithmeticException.class, () -> PricingEngine.checkStorable(PricingEngine.MAX_STORABLE_CENTS + 1));
+        assertThrows(ArithmeticException.class, () -> PricingEngine.checkStorable(-PricingEngine.MAX_STORABLE_CENTS - 1));
+    }
+}
@@ -0,0 +1,181 @@
+package ch.hearc.ig.orderresto.service;
+
+import ch.hearc.ig.orderresto.business.Address;
+import ch.hearc.ig.orderresto.business.Customer;
+import ch.hearc.ig.orderresto.business.Order;
+import ch.hearc.ig.orderresto.business.PrivateCustomer;
+import ch.hearc.ig.orderresto.business.Restaurant;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderEventBusTest {
+
+    private static final int BUFFER_SIZE = 4;
+
+    private final Address address = new Address("CH", "2000", "Neuchâtel", "Rue du Seyon", "1");
+    private final Customer customer = new PrivateCustomer(1L, "+41 79 000 00 00", "client@test.ch", this.address, "F", "Prénom", "Nom");
+    private final Restaurant restaurant = new Restaurant(1L, "Restaurant", this.address);
+
+    @Test
+    void rejectsABufferSizeThatIsNotAPowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new OrderEventBus(6, OrderEventBus.WaitStrategy.BLOCKING));
+    }
+
+    @ParameterizedTest
+    @EnumSource(OrderEventBus.WaitStrategy.class)
+    void deliversEveryEventInOrderAcrossWraps(OrderEventBus.WaitStrategy waitStrategy) throws InterruptedException {
+        OrderEventBus bus = new OrderEventBus(BUFFER_SIZE, waitStrategy);
+        int events = BUFFER_SIZE * 25;
+        List<Long> orderIds = Collections.synchronizedList(new ArrayList<>());
+        List<Long> sequences = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch handled = new CountDownLatch(events);
+        bus.subscribe("test", (event, sequence, endOfBatch) -> {
+            orderIds.add(event.getOrderId());
+            sequences.add(sequence);
+            handled.countDown();
+        });
+
+        for (long id = 0; id < events; id++) {
+            bus.publish(OrderEvent.Type.PLACED, this.order(id));
+        }
+
+        assertTrue(handled.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < events; i++) {
+            assertEquals(i, orderIds.get(i));
+            assertEquals(i, sequences.get(i));
+        }
+        assertEquals(events, bus.getPublishedEvents());
+        bus.shutdown();
+        assertEquals(0, bus.getLag("test"));
+    }
+
+    @Test
+    void publishersWaitForTheSlowestConsumer() throws InterruptedException {
+        OrderEventBus bus = new OrderEventBus(BUFFER_SIZE, OrderEventBus.WaitStrategy.BLOCKING);
+        CountDownLatch firstEventReceived = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> orderIds = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch handled = new CountDownLatch(BUFFER_SIZE + 1);
+        bus.subscribe("slow", (event, sequence, endOfBatch) -> {
+            if (sequence == 0) {
+                firstEventReceived.countDown();
+                release.await();
+            }
+            // Read after the wait, the slot must not have been reused meanwhile
+            orderIds.add(event.getOrderId());
+            handled.countDown();
+        });
+        bus.subscribe("fast", (event, sequence, endOfBatch) -> {});
+
+        Thread publisher = new Thread(() -> {
+            for (long id = 0; id <= BUFFER_SIZE; id++) {
+                bus.publish(OrderEvent.Type.PLACED, this.order(id));
+            }
+        });
+        publisher.start();
+        assertTrue(firstEventReceived.await(10, TimeUnit.SECONDS));
+
+        // The buffer is full of events the slow consumer has not handled, the last one cannot be published
+        publisher.join(200);
+        assertTrue(publisher.isAlive());
+        assertEquals(BUFFER_SIZE, bus.getPublishedEvents());
+        assertEquals(1, bus.getProducerWaits());
+
+        release.countDown();
+        publisher.join(TimeUnit.SECONDS.toMillis(10));
+        assertTrue(handled.await(10, TimeUnit.SECONDS));
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L), orderIds);
+        bus.shutdown();
+    }
+
+    @Test
+    void handlesThePublishedEventsThenDropsTheLaterOnesOnceStopped() throws InterruptedException {
+        OrderEventBus bus = new OrderEventBus(BUFFER_SIZE, OrderEventBus.WaitStrategy.BLOCKING);
+        List<Long> orderIds = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch release = new CountDownLatch(1);
+        bus.subscribe("test", (event, sequence, endOfBatch) -> {
+            release.await();
+            orderIds.add(event.getOrderId());
+        });
+        bus.publish(OrderEvent.Type.PLACED, this.order(1));
+        bus.publish(OrderEvent.Type.REMOVED, this.order(2));
+
+        release.countDown();
+        bus.shutdown();
+        bus.publish(OrderEvent.Type.PLACED, this.order(3));
+
+        assertEquals(List.of(1L, 2L), orderIds);
+        assertEquals(2, bus.getPublishedEvents());
+        assertEquals(1, bus.getDroppedEvents());
+    }
+
+    @Test
+    void aPublisherWaitingForASlotWhenStoppedDropsItsEvent() throws InterruptedException {
+        OrderEventBus bus = new OrderEventBus(BUFFER_SIZE, OrderEventBus.WaitStrategy.BLOCKING);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> orderIds = Collections.synchronizedList(new ArrayList<>());
+        bus.subscribe("slow", (event, sequence, endOfBatch) -> {
+            release.await();
+            orderIds.add(event.getOrderId());
+        });
+
+        Thread publisher = new Thread(() -> {
+            for (long id = 0; id <= BUFFER_SIZE; id++) {
+                bus.publish(OrderEvent.Type.PLACED, this.order(id));
+            }
+        });
+        publisher.start();
+        publisher.join(200);
+        assertTrue(publisher.isAlive());
+
+        Thread stopper = new Thread(bus::shutdown);
+        stopper.start();
+        publisher.join(TimeUnit.SECONDS.toMillis(10));
+        assertEquals(1, bus.getDroppedEvents());
+
+        // The events already published are handled, none was overwritten by the dropped one
+        release.countDown();
+        stopper.join(TimeUnit.SECONDS.toMillis(10));
+        assertEquals(List.of(0L, 1L, 2L, 3L), orderIds);
+    }
+
+    @Test
+    void aFailingHandlerDoesNotStopItsConsumer() throws InterruptedException {
+        OrderEventBus bus = new OrderEventBus(BUFFER_SIZE, OrderEventBus.WaitStrategy.BLOCKING);
+        CountDownLatch handled = new CountDownLatch(2);
+        bus.subscribe("test", (event, sequence, endOfBatch) -> {
+            handled.countDown();
+            if (event.getOrderId() == 1) {
+                throw new IllegalStateException("Failing on purpose");
+            }
+        });
+        bus.publish(OrderEvent.Type.PLACED, this.order(1));
+        bus.publish(OrderEvent.Type.PLACED, this.order(2));
+
+        assertTrue(handled.await(10, TimeUnit.SECONDS));
+        bus.shutdown();
+        assertTrue(bus.summary().contains("failed=1"));
+    }
+
+    private Order order(long id) {
+        return new Order.Builder()
+                .withId(id)
+                .withCustomer(this.customer)
+                .withRestaurant(this.restaurant)
+                .withTakeAway(false)
+                .withWhen(LocalDateTime.now())
+                .build();
+    }
+}
@@ -0,0 +1,99 @@
+package ch.hearc.ig.orderresto.service;
+
+import ch.hearc.ig.orderresto.business.Address;
+import ch.hearc.ig.orderresto.business.DailyRevenue;
+import ch.hearc.ig.orderresto.business.Order;
+import ch.hearc.ig.orderresto.business.Restaurant;
+import ch.hearc.ig.orderresto.persistence.utils.HibernateUtil;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RevenueServiceTest {
+
+    private static final int TRANSACTIONS = 8;
+    private static final int DAYS = 20;
+
+    private final RevenueService revenueService = RevenueService.getInstance();
+    private final Restaurant restaurant = new Restaurant(1L, "Restaurant", new Address("CH", "2000", "Neuchâtel", "Rue du Seyon", "1"));
+
+    @Test
+    void addsToTheRollupOfADay() {
+        LocalDate day = LocalDate.of(2023, 6, 1);
+
+        HibernateUtil.runInTransaction(entityManager -> this.revenueService.applyChanges(entityManager, this.changes(day, "12.50")));
+        HibernateUtil.runInTransaction(entityManager -> this.revenueService.applyChanges(entityManager, this.changes(day, "7.25")));
+
+        DailyRevenue revenue = this.revenueOf(day);
+        assertEquals(2, revenue.getOrderCount());
+        assertEquals(new BigDecimal("19.75"), revenue.getTotalAmount());
+    }
+
+    @Test
+    void countsEveryOrderWhenTransactionsCreateTheRollupOfADayConcurrently() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(TRANSACTIONS);
+        try {
+            for (int d = 0; d < DAYS; d++) {
+                LocalDate day = LocalDate.of(2024, 1, 1).plusDays(d);
+                // The transactions write the rollup of the day at the same time, none of them finds it
+                CyclicBarrier start = new CyclicBarrier(TRANSACTIONS);
+
+                List<Future<?>> transactions = new ArrayList<>();
+                for (int t = 0; t < TRANSACTIONS; t++) {
+                    transactions.add(executor.submit(() -> HibernateUtil.runInTransaction(entityManager -> {
+                        await(start);
+                        this.revenueService.applyChanges(entityManager, this.changes(day, "10.00"));
+                    })));
+                }
+                for (Future<?> transaction : transactions) {
+                    transaction.get(30, TimeUnit.SECONDS);
+                }
+
+                DailyRevenue revenue = this.revenueOf(day);
+                assertEquals(TRANSACTIONS, revenue.getOrderCount());
+                assertEquals(new BigDecimal("10.00").multiply(BigDecimal.valueOf(TRANSACTIONS)), revenue.getTotalAmount());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private RevenueChanges changes(LocalDate day, String totalAmount) {
+        Order order = new Order.Builder()
+                .withRestaurant(this.restaurant)
+                .withTakeAway(false)
+                .withWhen(day.atTime(12, 0))
+                .build();
+        order.setTotalAmount(new BigDecimal(totalAmount));
+
+        RevenueChanges changes = new RevenueChanges();
+        changes.add(order);
+        return changes;
+    }
+
+    private DailyRevenue revenueOf(LocalDate day) {
+        List<DailyRevenue> revenue = this.revenueService.getDailyRevenue(this.restaurant, day, day);
+        assertEquals(1, revenue.size());
+        return revenue.get(0);
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
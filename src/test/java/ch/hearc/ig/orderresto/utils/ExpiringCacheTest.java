@@ -0,0 +1,94 @@
+package ch.hearc.ig.orderresto.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ExpiringCacheTest {
+
+    private static final long LONG_TIME_TO_LIVE = 60_000;
+    private static final long SHORT_TIME_TO_LIVE = 50;
+
+    @Test
+    void returnsThePutValues() {
+        ExpiringCache<String, Long> cache = new ExpiringCache<>(10, LONG_TIME_TO_LIVE);
+        cache.put("a", 1L);
+        cache.put("b", 2L);
+
+        assertEquals(1L, cache.get("a"));
+        assertEquals(2L, cache.get("b"));
+        assertNull(cache.get("c"));
+    }
+
+    @Test
+    void replacesTheValueOfAKey() {
+        ExpiringCache<String, Long> cache = new ExpiringCache<>(10, LONG_TIME_TO_LIVE);
+        cache.put("a", 1L);
+        cache.put("a", 2L);
+
+        assertEquals(2L, cache.get("a"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void evictsTheOldestEntriesWhenFull() {
+        ExpiringCache<String, Long> cache = new ExpiringCache<>(3, LONG_TIME_TO_LIVE);
+        for (long i = 0; i < 5; i++) {
+            cache.put("k" + i, i);
+        }
+
+        assertEquals(3, cache.size());
+        assertNull(cache.get("k0"));
+        assertNull(cache.get("k1"));
+        assertEquals(4L, cache.get("k4"));
+    }
+
+    @Test
+    void aReplacedKeyBecomesTheNewest() {
+        ExpiringCache<String, Long> cache = new ExpiringCache<>(2, LONG_TIME_TO_LIVE);
+        cache.put("a", 1L);
+        cache.put("b", 2L);
+        cache.put("a", 3L);
+        cache.put("c", 4L);
+
+        assertNull(cache.get("b"));
+        assertEquals(3L, cache.get("a"));
+        assertEquals(4L, cache.get("c"));
+    }
+
+    @Test
+    void expiresEntriesAfterTheirTimeToLive() throws InterruptedException {
+        ExpiringCache<String, Long> cache = new ExpiringCache<>(10, SHORT_TIME_TO_LIVE);
+        cache.put("a", 1L);
+
+        Thread.sleep(SHORT_TIME_TO_LIVE * 2);
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void dropsExpiredEntriesWhenPutting() throws InterruptedException {
+        ExpiringCache<String, Long> cache = new ExpiringCache<>(10, SHORT_TIME_TO_LIVE);
+        cache.put("a", 1L);
+        cache.put("b", 2L);
+
+        Thread.sleep(SHORT_TIME_TO_LIVE * 2);
+        cache.put("c", 3L);
+
+        assertEquals(1, cache.size());
+        assertEquals(3L, cache.get("c"));
+    }
+
+    @Test
+    void removesAKey() {
+        ExpiringCache<String, Long> cache = new ExpiringCache<>(10, LONG_TIME_TO_LIVE);
+        cache.put("a", 1L);
+        cache.remove("a");
+        cache.remove("missing");
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,118 @@
+package ch.hearc.ig.orderresto.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    private static final long HIGHEST_TRACKABLE_NANOS = (1L << 46) - 1;
+    private static final long MILLISECOND = 1_000_000;
+
+    @Test
+    void isEmptyBeforeTheFirstDuration() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMeanMillis());
+        assertEquals(0, histogram.getMaxMillis());
+        assertEquals(0, histogram.getPercentileMillis(99));
+    }
+
+    @Test
+    void countsTheShortestDurationsExactly() {
+        // Below 256 nanoseconds every duration has its own sub-bucket
+        for (long nanos = 0; nanos < 256; nanos++) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(nanos);
+            histogram.record(HIGHEST_TRACKABLE_NANOS);
+
+            assertEquals(nanos / 1_000_000.0, histogram.getPercentileMillis(50));
+        }
+    }
+
+    @Test
+    void countsEveryDurationWithinOnePercent() {
+        SplittableRandom random = new SplittableRandom(1);
+        for (int i = 0; i < 10_000; i++) {
+            long nanos = random.nextLong(256, HIGHEST_TRACKABLE_NANOS);
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(nanos);
+            histogram.record(HIGHEST_TRACKABLE_NANOS);
+
+            // The percentile is the highest duration of the sub-bucket, never below the recorded one
+            double percentile = histogram.getPercentileMillis(50);
+            assertTrue(percentile >= nanos / 1_000_000.0, "percentile of " + nanos);
+            assertTrue(percentile < nanos * 1.01 / 1_000_000.0, "percentile of " + nanos);
+        }
+    }
+
+    @Test
+    void splitsEachPowerOfTwoInSubBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 256 and 257 share a sub-bucket two nanoseconds wide, 258 starts the next one
+        histogram.record(256);
+        histogram.record(257);
+        histogram.record(258);
+        histogram.record(HIGHEST_TRACKABLE_NANOS);
+
+        assertEquals(257 / 1_000_000.0, histogram.getPercentileMillis(25));
+        assertEquals(257 / 1_000_000.0, histogram.getPercentileMillis(50));
+        assertEquals(259 / 1_000_000.0, histogram.getPercentileMillis(75));
+    }
+
+    @Test
+    void readsThePercentilesByRank() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long millis = 100; millis >= 1; millis--) {
+            histogram.record(millis * MILLISECOND);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(50.5, histogram.getMeanMillis(), 1e-9);
+        assertEquals(100, histogram.getMaxMillis());
+        assertEquals(1, histogram.getPercentileMillis(0), 0.01);
+        assertEquals(50, histogram.getPercentileMillis(50), 0.5);
+        assertEquals(99, histogram.getPercentileMillis(99), 0.99);
+        // The highest percentile is capped by the longest duration
+        assertEquals(100, histogram.getPercentileMillis(100));
+        assertEquals(100, histogram.getPercentileMillis(150));
+    }
+
+    @Test
+    void countsTheDurationsOutOfRangeInTheOuterBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(HIGHEST_TRACKABLE_NANOS * 4);
+
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.getPercentileMillis(50));
+        // The mean and the longest duration keep the recorded values
+        assertEquals(HIGHEST_TRACKABLE_NANOS * 4 / 1_000_000.0, histogram.getMaxMillis());
+        assertEquals(HIGHEST_TRACKABLE_NANOS / 1_000_000.0, histogram.getPercentileMillis(100));
+    }
+
+    @Test
+    void recordsFromSeveralThreads() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    histogram.record(MILLISECOND);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40_000, histogram.getCount());
+        assertEquals(1, histogram.getMeanMillis(), 1e-9);
+        assertEquals(1, histogram.getPercentileMillis(99));
+    }
+}
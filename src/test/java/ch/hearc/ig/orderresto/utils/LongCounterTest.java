@@ -0,0 +1,136 @@
+package ch.hearc.ig.orderresto.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LongCounterTest {
+
+    @Test
+    void countsOccurrencesAndDeltas() {
+        LongCounter counter = new LongCounter(4);
+        counter.increment(7);
+        counter.increment(7);
+        counter.add(-3, 5);
+        counter.increment(0);
+
+        assertEquals(2, counter.get(7));
+        assertEquals(5, counter.get(-3));
+        assertEquals(1, counter.get(0));
+        assertEquals(0, counter.get(42));
+        assertEquals(3, counter.size());
+    }
+
+    @Test
+    void rejectsTheFreeSlotMarker() {
+        LongCounter counter = new LongCounter(4);
+
+        assertThrows(IllegalArgumentException.class, () -> counter.increment(Long.MIN_VALUE));
+        assertEquals(0, counter.get(Long.MIN_VALUE));
+        assertEquals(0, counter.size());
+    }
+
+    @Test
+    void keepsTheCountsWhenGrowingBeyondTheExpectedKeys() {
+        LongCounter counter = new LongCounter(1);
+        Map<Long, Long> expected = new HashMap<>();
+        SplittableRandom random = new SplittableRandom(1);
+
+        for (int i = 0; i < 100_000; i++) {
+            long key = random.nextInt(5_000) * 1_024L;
+            counter.increment(key);
+            expected.merge(key, 1L, Long::sum);
+        }
+
+        assertEquals(expected.size(), counter.size());
+        expected.forEach((key, count) -> assertEquals(count, counter.get(key)));
+    }
+
+    @Test
+    void collidingKeysAreProbedLinearly() {
+        // A table of 8 slots, in which the keys below all hash to the same slot
+        LongCounter counter = new LongCounter(4);
+        long[] colliding = collidingKeys(8, 3);
+        for (int i = 0; i < colliding.length; i++) {
+            counter.add(colliding[i], i + 1);
+        }
+
+        for (int i = 0; i < colliding.length; i++) {
+            assertEquals(i + 1, counter.get(colliding[i]));
+        }
+        assertEquals(3, counter.size());
+    }
+
+    @Test
+    void selectsTheHighestCountsInDescendingOrder() {
+        LongCounter counter = new LongCounter(16);
+        counter.add(1, 10);
+        counter.add(2, 50);
+        counter.add(3, 30);
+        counter.add(4, 40);
+        counter.add(5, 20);
+
+        assertArrayEquals(new long[]{2, 4, 3}, counter.topKeys(3));
+    }
+
+    @Test
+    void ranksEqualCountsByAscendingKey() {
+        LongCounter counter = new LongCounter(16);
+        for (long key : new long[]{9, 4, 7, 1, 5}) {
+            counter.add(key, 3);
+        }
+        counter.add(8, 4);
+
+        assertArrayEquals(new long[]{8, 1, 4}, counter.topKeys(3));
+    }
+
+    @Test
+    void returnsEveryKeyWhenFewerThanRequested() {
+        LongCounter counter = new LongCounter(16);
+        counter.add(1, 1);
+        counter.add(2, 2);
+
+        assertArrayEquals(new long[]{2, 1}, counter.topKeys(10));
+        assertArrayEquals(new long[0], counter.topKeys(0));
+        assertArrayEquals(new long[0], new LongCounter(4).topKeys(3));
+    }
+
+    @Test
+    void selectsTheSameKeysAsAFullSort() {
+        LongCounter counter = new LongCounter(64);
+        Map<Long, Long> counts = new HashMap<>();
+        SplittableRandom random = new SplittableRandom(2);
+
+        for (int i = 0; i < 50_000; i++) {
+            long key = random.nextInt(2_000);
+            counter.increment(key);
+            counts.merge(key, 1L, Long::sum);
+        }
+
+        long[] expected = counts.entrySet().stream()
+                .sorted(Map.Entry.<Long, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey(Comparator.naturalOrder())))
+                .limit(25)
+                .mapToLong(Map.Entry::getKey)
+                .toArray();
+        assertArrayEquals(expected, counter.topKeys(25));
+    }
+
+    // Same Fibonacci hashing as the counter
+    private static long[] collidingKeys(int capacity, int count) {
+        long[] keys = new long[count];
+        int found = 0;
+        for (long key = 1; found < count; key++) {
+            if ((((key * 0x9E3779B97F4A7C15L) >>> 32) & (capacity - 1)) == 0) {
+                keys[found++] = key;
+            }
+        }
+        return keys;
+    }
+}